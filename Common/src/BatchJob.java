@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * One job of a batch, timed, whose failure is kept instead of thrown.
+ *
+ * <p>
+ * {@link #runAll(List, int)} runs the jobs of a batch on one shared
+ * work-stealing {@code ForkJoinPool}, the largest first so that no long job
+ * starts last; the parallel parts of a job run on the same pool, so idle
+ * threads steal work from the jobs still running. A job that fails does not
+ * stop the others, even when it fails with an {@code Error} such as
+ * {@code OutOfMemoryError}: its {@link #error()} tells why, for the caller
+ * to report with the other jobs, and {@link #rethrowErrors(List)} then
+ * throws the errors no program should go on after.
+ *
+ * @author Bowei Kou
+ *
+ */
+public abstract class BatchJob {
+
+    /**
+     * Time the job took, in nanoseconds.
+     */
+    private long nanos;
+
+    /**
+     * Why the job failed, or null.
+     */
+    private Throwable error;
+
+    /**
+     * Does the work of the job.
+     *
+     * @throws IOException
+     *             if the job fails
+     */
+    protected abstract void work() throws IOException;
+
+    /**
+     * Returns an estimate of the work of the job, such as the size of its
+     * input, by which the largest jobs are started first.
+     *
+     * @return the estimate
+     */
+    protected abstract long size();
+
+    /**
+     * Runs the job, recording its time and its failure.
+     */
+    private void run() {
+        long start = System.nanoTime();
+        try {
+            this.work();
+        } catch (IOException | RuntimeException | Error e) {
+            // even an Error is only thrown once every job is reported
+            this.error = e;
+        }
+        this.nanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the time the job took.
+     *
+     * @return the elapsed time, in milliseconds
+     */
+    public final long millis() {
+        final long nanosPerMilli = 1_000_000;
+        return this.nanos / nanosPerMilli;
+    }
+
+    /**
+     * Returns why the job failed.
+     *
+     * @return the error, or null if the job succeeded
+     */
+    public final Throwable error() {
+        return this.error;
+    }
+
+    /**
+     * Returns the outcome of the job, for its {@code toString}.
+     *
+     * @param result
+     *            what the job did, if it succeeded
+     * @return result and the time taken, or the error
+     */
+    protected final String outcome(String result) {
+        String s;
+        if (this.error != null) {
+            s = "failed after " + this.millis() + " ms: " + this.error;
+        } else {
+            s = result + ", " + this.millis() + " ms";
+        }
+        return s;
+    }
+
+    /**
+     * Runs jobs on a shared pool of threads and waits for all of them.
+     *
+     * @param jobs
+     *            the jobs
+     * @param threads
+     *            the number of threads, or 0 for one per core
+     */
+    public static void runAll(List<? extends BatchJob> jobs, int threads) {
+        assert threads >= 0 : "Violation of: threads >= 0";
+
+        List<BatchJob> order = new ArrayList<>(jobs);
+        order.sort(Comparator.comparingLong(BatchJob::size).reversed());
+        ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads)
+                : new ForkJoinPool();
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (BatchJob job : order) {
+                tasks.add(pool.submit(job::run));
+            }
+            for (ForkJoinTask<?> t : tasks) {
+                t.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Throws the first {@code Error} a job of jobs failed with, with the
+     * errors of the other jobs suppressed, once the caller has reported
+     * every job.
+     *
+     * @param jobs
+     *            the jobs, after {@link #runAll(List, int)}
+     * @throws Error
+     *             if a job failed with an {@code Error}
+     */
+    public static void rethrowErrors(List<? extends BatchJob> jobs) {
+        Error first = null;
+        for (BatchJob job : jobs) {
+            if (job.error instanceof Error) {
+                if (first == null) {
+                    first = (Error) job.error;
+                } else {
+                    first.addSuppressed(job.error);
+                }
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+
+}
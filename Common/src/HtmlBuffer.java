@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A reusable, growable UTF-8 byte buffer that HTML pages are rendered into.
+ *
+ * <p>
+ * Text is either appended as is ({@link #raw(CharSequence)}) or escaped for
+ * HTML text and attribute values ({@link #escaped(CharSequence)}). Both
+ * encode straight into the buffer, so rendering a page creates no
+ * intermediate {@code String}s. Call {@link #clear()} to reuse the buffer for
+ * the next page.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class HtmlBuffer {
+
+    /**
+     * Default initial capacity.
+     */
+    private static final int INITIAL = 1 << 12;
+
+    /**
+     * Replacement of each ASCII character that must be escaped, or null.
+     */
+    private static final byte[][] ENTITY = new byte[128][];
+
+    static {
+        ENTITY['&'] = "&amp;".getBytes(StandardCharsets.US_ASCII);
+        ENTITY['<'] = "&lt;".getBytes(StandardCharsets.US_ASCII);
+        ENTITY['>'] = "&gt;".getBytes(StandardCharsets.US_ASCII);
+        ENTITY['"'] = "&quot;".getBytes(StandardCharsets.US_ASCII);
+        ENTITY['\''] = "&#39;".getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The bytes written so far, in [0, length).
+     */
+    private byte[] bytes;
+
+    /**
+     * Number of bytes written.
+     */
+    private int length;
+
+    /**
+     * Constructor of an empty buffer.
+     */
+    public HtmlBuffer() {
+        this.bytes = new byte[INITIAL];
+    }
+
+    /**
+     * Empties the buffer, keeping its storage.
+     */
+    public void clear() {
+        this.length = 0;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return the number of bytes written
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Makes room for n more bytes.
+     *
+     * @param n
+     *            number of bytes about to be written
+     */
+    private void ensure(int n) {
+        if (this.length + n > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes,
+                    Math.max(this.bytes.length * 2, this.length + n));
+        }
+    }
+
+    /**
+     * Appends bytes that are already encoded.
+     *
+     * @param b
+     *            the bytes
+     * @return this buffer
+     */
+    public HtmlBuffer bytes(byte[] b) {
+        this.ensure(b.length);
+        System.arraycopy(b, 0, this.bytes, this.length, b.length);
+        this.length += b.length;
+        return this;
+    }
+
+    /**
+     * Appends s without escaping.
+     *
+     * @param s
+     *            the text
+     * @return this buffer
+     */
+    public HtmlBuffer raw(CharSequence s) {
+        return this.append(s, 0, s.length(), false);
+    }
+
+    /**
+     * Appends the decimal form of n.
+     *
+     * @param n
+     *            the number
+     * @return this buffer
+     */
+    public HtmlBuffer raw(int n) {
+        return this.raw(Integer.toString(n));
+    }
+
+    /**
+     * Appends c without escaping.
+     *
+     * @param c
+     *            the character
+     * @return this buffer
+     */
+    public HtmlBuffer raw(char c) {
+        if (c < 128) {
+            this.ensure(1);
+            this.bytes[this.length] = (byte) c;
+            this.length++;
+        } else {
+            this.append(String.valueOf(c), 0, 1, false);
+        }
+        return this;
+    }
+
+    /**
+     * Appends s, escaping the characters that are special in HTML.
+     *
+     * @param s
+     *            the text
+     * @return this buffer
+     */
+    public HtmlBuffer escaped(CharSequence s) {
+        return this.append(s, 0, s.length(), true);
+    }
+
+    /**
+     * Appends s[from, to), escaping the characters that are special in HTML.
+     *
+     * @param s
+     *            the text
+     * @param from
+     *            index of the first character
+     * @param to
+     *            index just past the last character
+     * @return this buffer
+     */
+    public HtmlBuffer escaped(CharSequence s, int from, int to) {
+        return this.append(s, from, to, true);
+    }
+
+    /**
+     * Encodes s[from, to) as UTF-8, escaping it if asked.
+     *
+     * @param s
+     *            the text
+     * @param from
+     *            index of the first character
+     * @param to
+     *            index just past the last character
+     * @param escape
+     *            whether HTML special characters are escaped
+     * @return this buffer
+     */
+    private HtmlBuffer append(CharSequence s, int from, int to,
+            boolean escape) {
+        // each char takes at most 3 bytes, or 6 when escaped
+        final int most = 6;
+        this.ensure((to - from) * most);
+        byte[] b = this.bytes;
+        int p = this.length;
+        int i = from;
+        while (i < to) {
+            char c = s.charAt(i);
+            i++;
+            if (c < 128) {
+                byte[] e = escape ? ENTITY[c] : null;
+                if (e == null) {
+                    b[p] = (byte) c;
+                    p++;
+                } else {
+                    System.arraycopy(e, 0, b, p, e.length);
+                    p += e.length;
+                }
+            } else if (c < 0x800) {
+                b[p] = (byte) (0xC0 | (c >> 6));
+                b[p + 1] = (byte) (0x80 | (c & 0x3F));
+                p += 2;
+            } else if (Character.isHighSurrogate(c) && i < to
+                    && Character.isLowSurrogate(s.charAt(i))) {
+                int cp = Character.toCodePoint(c, s.charAt(i));
+                i++;
+                b[p] = (byte) (0xF0 | (cp >> 18));
+                b[p + 1] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[p + 2] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[p + 3] = (byte) (0x80 | (cp & 0x3F));
+                p += 4;
+            } else if (Character.isSurrogate(c)) {
+                b[p] = (byte) '?';
+                p++;
+            } else {
+                b[p] = (byte) (0xE0 | (c >> 12));
+                b[p + 1] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p + 2] = (byte) (0x80 | (c & 0x3F));
+                p += 3;
+            }
+        }
+        this.length = p;
+        return this;
+    }
+
+    /**
+     * Writes the content of the buffer to ch.
+     *
+     * @param ch
+     *            the channel
+     * @throws IOException
+     *             if the channel cannot be written
+     */
+    public void writeTo(WritableByteChannel ch) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(this.bytes, 0, this.length);
+        while (bb.hasRemaining()) {
+            ch.write(bb);
+        }
+    }
+
+    /**
+     * Returns a copy of the content of the buffer.
+     *
+     * @return the bytes written so far
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(this.bytes, this.length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.bytes, 0, this.length, StandardCharsets.UTF_8);
+    }
+
+}
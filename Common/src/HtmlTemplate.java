@@ -0,0 +1,108 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A precompiled HTML page template.
+ *
+ * <p>
+ * The template text is split at each slot marker {@code {}} into static
+ * fragments, which are encoded to UTF-8 bytes once, with every {@code \n}
+ * turned into the platform line separator (what {@code println} would
+ * write). A page is rendered into an {@code HtmlBuffer} by copying fragment 0,
+ * filling slot 0, copying fragment 1, and so on.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class HtmlTemplate {
+
+    /**
+     * Marker of a slot in the template text.
+     */
+    private static final String SLOT = "{}";
+
+    /**
+     * The encoded static fragments; there is one more than slots.
+     */
+    private final byte[][] fragments;
+
+    /**
+     * Constructor.
+     *
+     * @param fragments
+     *            the encoded static fragments
+     */
+    private HtmlTemplate(byte[][] fragments) {
+        this.fragments = fragments;
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @param text
+     *            the template, with {@code {}} marking each slot
+     * @return the compiled template
+     */
+    public static HtmlTemplate compile(String text) {
+        assert text != null : "Violation of: text is not null";
+
+        String nl = System.lineSeparator();
+        List<byte[]> parts = new ArrayList<>();
+        int from = 0;
+        int at = text.indexOf(SLOT);
+        while (at >= 0) {
+            parts.add(text.substring(from, at).replace("\n", nl)
+                    .getBytes(StandardCharsets.UTF_8));
+            from = at + SLOT.length();
+            at = text.indexOf(SLOT, from);
+        }
+        parts.add(text.substring(from).replace("\n", nl)
+                .getBytes(StandardCharsets.UTF_8));
+        return new HtmlTemplate(parts.toArray(new byte[parts.size()][]));
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the number of slots
+     */
+    public int slots() {
+        return this.fragments.length - 1;
+    }
+
+    /**
+     * Appends static fragment k, the text just before slot k (or after the
+     * last slot when k = slots()).
+     *
+     * @param out
+     *            the buffer
+     * @param k
+     *            index of the fragment
+     * @requires 0 <= k <= slots()
+     */
+    public void fragment(HtmlBuffer out, int k) {
+        out.bytes(this.fragments[k]);
+    }
+
+    /**
+     * Appends the whole page, with values escaped into the slots.
+     *
+     * @param out
+     *            the buffer
+     * @param values
+     *            the value of each slot
+     * @requires |values| = slots()
+     */
+    public void render(HtmlBuffer out, CharSequence... values) {
+        assert values.length == this.slots()
+                : "Violation of: |values| = slots()";
+
+        for (int k = 0; k < values.length; k++) {
+            out.bytes(this.fragments[k]);
+            out.escaped(values[k]);
+        }
+        out.bytes(this.fragments[values.length]);
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Splits text into words and separator strings.
+ *
+ * <p>
+ * A word is a maximal run of characters that are not separators, a separator
+ * string a maximal run of separators. The separators are compiled once into a
+ * lookup table indexed by character, and tokens are reported as spans
+ * {@code [start, end)} of the text, so tokenizing allocates nothing per
+ * token; {@link #next(CharSequence, int)} builds a {@code String} only for
+ * callers that need one. Any {@code CharSequence} can be tokenized, including
+ * a {@code CharBuffer} over a decoded file.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class Tokenizer {
+
+    /**
+     * Receives the words of a text.
+     */
+    public interface WordListener {
+
+        /**
+         * Called for each word, in the order of the text.
+         *
+         * @param start
+         *            index of the first character of the word
+         * @param end
+         *            index just past the last character of the word
+         */
+        void word(int start, int end);
+    }
+
+    /**
+     * separator[c] is true when character c is a separator.
+     */
+    private final boolean[] separator;
+
+    /**
+     * Constructor.
+     *
+     * @param separators
+     *            the separator characters
+     */
+    public Tokenizer(CharSequence separators) {
+        assert separators != null : "Violation of: separators is not null";
+
+        int max = 0;
+        for (int i = 0; i < separators.length(); i++) {
+            max = Math.max(max, separators.charAt(i));
+        }
+        this.separator = new boolean[max + 1];
+        for (int i = 0; i < separators.length(); i++) {
+            this.separator[separators.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * Reports whether c is a separator.
+     *
+     * @param c
+     *            the character
+     * @return true if c is a separator
+     */
+    public boolean isSeparator(char c) {
+        return c < this.separator.length && this.separator[c];
+    }
+
+    /**
+     * Returns the end of the word or separator string of text starting at
+     * position.
+     *
+     * @param text
+     *            the text
+     * @param position
+     *            the starting index
+     * @return the index just past the token starting at position
+     * @requires 0 <= position < |text|
+     * @ensures text[position, end) is a word or a separator string, and
+     *          end = |text| or text[end] is of the other kind
+     */
+    public int end(CharSequence text, int position) {
+        assert 0 <= position : "Violation of: 0 <= position";
+        assert position < text.length() : "Violation of: position < |text|";
+
+        boolean sep = this.isSeparator(text.charAt(position));
+        int n = text.length();
+        int i = position + 1;
+        while (i < n && this.isSeparator(text.charAt(i)) == sep) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the word or separator string of text starting at position.
+     *
+     * @param text
+     *            the text
+     * @param position
+     *            the starting index
+     * @return text[position, end(text, position))
+     * @requires 0 <= position < |text|
+     */
+    public String next(CharSequence text, int position) {
+        return text.subSequence(position, this.end(text, position))
+                .toString();
+    }
+
+    /**
+     * Reports every word of text to listener.
+     *
+     * @param text
+     *            the text
+     * @param listener
+     *            the listener told about each word
+     */
+    public void words(CharSequence text, WordListener listener) {
+        assert listener != null : "Violation of: listener is not null";
+
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            int end = this.end(text, i);
+            if (!this.isSeparator(text.charAt(i))) {
+                listener.word(i, end);
+            }
+            i = end;
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+package glossary.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import components.map.Map;
+import components.map.Map1L;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.set.Set;
+import components.set.Set1L;
+import components.simplereader.SimpleReader;
+import components.simplereader.SimpleReader1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Benchmarks of the methods of {@code Glossary}, one at a time, on a
+ * glossary written by {@code GlossaryGenerator}.
+ *
+ * <p>
+ * The methods that work on one word ({@code writeDes},
+ * {@code nextWordOrSeparator}, {@code writePage}) take the words from a fixed
+ * sample in turn, so every size runs the same kind of descriptions. The
+ * methods that work on the whole glossary ({@code readWord},
+ * {@code writeIndex}) read or write all of it per operation.
+ *
+ * @author Bowei Kou
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GlossaryBenchmark {
+
+    /**
+     * Size of the sample of words; a power of two.
+     */
+    private static final int SAMPLE = 4096;
+
+    /**
+     * Number of words of the glossary.
+     */
+    @Param({ "1000", "10000", "100000", "1000000" })
+    int terms;
+
+    /**
+     * Average number of words of a description.
+     */
+    @Param({ "20" })
+    int words;
+
+    /**
+     * Probability that a word of a description is a glossary word.
+     */
+    @Param({ "0.2" })
+    double density;
+
+    /**
+     * The generated glossary.
+     */
+    private Path file;
+
+    /**
+     * Where writeIndex and writePage print.
+     */
+    private Path output;
+
+    /**
+     * The words and descriptions, as read by readWord.
+     */
+    private Map<String, String> m;
+
+    /**
+     * The words in lexicographic order.
+     */
+    private Queue<String> q;
+
+    /**
+     * Linker built from every word.
+     */
+    private Object linker;
+
+    /**
+     * The separators of writeDes.
+     */
+    private Set<Character> separators;
+
+    /**
+     * Words the per-word benchmarks take in turn.
+     */
+    private String[] sample;
+
+    /**
+     * Number of words taken from the sample so far.
+     */
+    private int next;
+
+    /**
+     * Generates and reads the glossary.
+     *
+     * @throws IOException
+     *             if the glossary cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.file = Files.createTempFile("glossary", ".txt");
+        this.output = Files.createTempFile("glossary", ".html");
+        GlossaryGenerator.write(this.file, this.terms, this.words,
+                this.density, 1L);
+        this.m = new Map1L<>();
+        this.q = new Queue1L<>();
+        SimpleReader input = new SimpleReader1L(this.file.toString());
+        GlossaryHandles.readWord(input, this.m, this.q);
+        input.close();
+        String[] all = new String[this.q.length()];
+        int i = 0;
+        for (String w : this.q) {
+            all[i] = w;
+            i++;
+        }
+        Arrays.sort(all);
+        this.q.sort(String::compareTo);
+        this.linker = GlossaryHandles.newLinker(all);
+        this.separators = new Set1L<>();
+        GlossaryHandles.generateElements(" \t,", this.separators);
+        SplittableRandom random = new SplittableRandom(2L);
+        this.sample = new String[SAMPLE];
+        for (int k = 0; k < SAMPLE; k++) {
+            this.sample[k] = all[random.nextInt(all.length)];
+        }
+    }
+
+    /**
+     * Deletes the glossary.
+     *
+     * @throws IOException
+     *             if a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+        Files.deleteIfExists(this.output);
+    }
+
+    /**
+     * Returns the next word of the sample.
+     *
+     * @return the word
+     */
+    private String nextWord() {
+        String w = this.sample[this.next & (SAMPLE - 1)];
+        this.next++;
+        return w;
+    }
+
+    /**
+     * Reads the whole glossary.
+     *
+     * @return the words and descriptions
+     */
+    @Benchmark
+    public Map<String, String> readWord() {
+        Map<String, String> words = new Map1L<>();
+        Queue<String> order = new Queue1L<>();
+        SimpleReader input = new SimpleReader1L(this.file.toString());
+        GlossaryHandles.readWord(input, words, order);
+        input.close();
+        return words;
+    }
+
+    /**
+     * Links the description of one word, then puts the original back.
+     *
+     * @return the linked description
+     */
+    @Benchmark
+    public String writeDes() {
+        String word = this.nextWord();
+        String des = this.m.value(word);
+        GlossaryHandles.writeDes(this.m, word, this.linker);
+        String linked = this.m.replaceValue(word, des);
+        return linked;
+    }
+
+    /**
+     * Splits the description of one word into words and separators.
+     *
+     * @param bh
+     *            consumes the pieces
+     */
+    @Benchmark
+    public void nextWordOrSeparator(Blackhole bh) {
+        String des = this.m.value(this.nextWord());
+        int i = 0;
+        while (i < des.length()) {
+            String s = GlossaryHandles.nextWordOrSeparator(des, i,
+                    this.separators);
+            bh.consume(s);
+            i += s.length();
+        }
+    }
+
+    /**
+     * Prints the index of the whole glossary.
+     */
+    @Benchmark
+    public void writeIndex() {
+        SimpleWriter out = new SimpleWriter1L(this.output.toString());
+        GlossaryHandles.writeIndex(out, this.q);
+        out.close();
+    }
+
+    /**
+     * Prints the page of one word.
+     */
+    @Benchmark
+    public void writePage() {
+        SimpleWriter out = new SimpleWriter1L(this.output.toString());
+        GlossaryHandles.writePage(out, this.m, this.nextWord());
+        out.close();
+    }
+
+}
@@ -0,0 +1,52 @@
+package glossary.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the glossary benchmarks with the GC profiler, so every result also
+ * reports the allocation rate, and writes the results as JSON.
+ *
+ * <p>
+ * Usage: {@code GlossaryBenchmarks [RESULT.json [REGEX [TERMS,...]]]}, where
+ * REGEX selects the benchmarks (all of them by default) and TERMS overrides
+ * the glossary sizes. The JSON files of two commits can be compared with any
+ * JMH result viewer.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryBenchmarks {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private GlossaryBenchmarks() {
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws RunnerException
+     *             if a benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        String result = args.length > 0 ? args[0] : "glossary-bench.json";
+        String include = args.length > 1 ? args[1]
+                : GlossaryBenchmarks.class.getPackage().getName() + ".*";
+        ChainedOptionsBuilder options = new OptionsBuilder().include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON).result(result);
+        if (args.length > 2) {
+            options.param("terms", args[2].split(","));
+        }
+        new Runner(options.build()).run();
+    }
+
+}
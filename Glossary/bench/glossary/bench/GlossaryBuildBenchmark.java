@@ -0,0 +1,140 @@
+package glossary.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end benchmark of {@code Glossary.build}: reading a glossary written
+ * by {@code GlossaryGenerator} and writing its whole site, with the given
+ * options.
+ *
+ * <p>
+ * Every operation writes thousands of files, so each one is timed on its
+ * own.
+ *
+ * @author Bowei Kou
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GlossaryBuildBenchmark {
+
+    /**
+     * Number of words of the glossary.
+     */
+    @Param({ "1000", "10000", "100000", "1000000" })
+    int terms;
+
+    /**
+     * Average number of words of a description.
+     */
+    @Param({ "20" })
+    int words;
+
+    /**
+     * Probability that a word of a description is a glossary word.
+     */
+    @Param({ "0.2" })
+    double density;
+
+    /**
+     * Options of {@code Glossary.build}, separated by spaces.
+     */
+    @Param({ "", "-threads=0" })
+    String options;
+
+    /**
+     * The generated glossary.
+     */
+    private Path file;
+
+    /**
+     * The output folder.
+     */
+    private Path folder;
+
+    /**
+     * Generates the glossary.
+     *
+     * @throws IOException
+     *             if the glossary cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.file = Files.createTempFile("glossary", ".txt");
+        GlossaryGenerator.write(this.file, this.terms, this.words,
+                this.density, 1L);
+    }
+
+    /**
+     * Starts each run from an empty output folder.
+     *
+     * @throws IOException
+     *             if the folder cannot be created
+     */
+    @Setup(Level.Iteration)
+    public void emptyFolder() throws IOException {
+        this.folder = Files.createTempDirectory("glossary");
+    }
+
+    /**
+     * Deletes the output folder.
+     *
+     * @throws IOException
+     *             if a file cannot be deleted
+     */
+    @TearDown(Level.Iteration)
+    public void deleteFolder() throws IOException {
+        try (Stream<Path> files = Files.walk(this.folder)) {
+            for (Path p : (Iterable<Path>) files
+                    .sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /**
+     * Deletes the glossary.
+     *
+     * @throws IOException
+     *             if the file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    /**
+     * Generates the whole site.
+     */
+    @Benchmark
+    public void build() {
+        String[] args = this.options.isEmpty() ? new String[0]
+                : this.options.split(" ");
+        GlossaryHandles.build(this.file.toString(), this.folder.toString(),
+                args);
+    }
+
+}
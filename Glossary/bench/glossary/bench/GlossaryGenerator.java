@@ -0,0 +1,153 @@
+package glossary.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic glossaries in the input format of {@code Glossary}: the
+ * word on one line, its description on the next, then a blank line.
+ *
+ * <p>
+ * The output depends only on the arguments, so a benchmark run on one commit
+ * reads the same bytes as on another. Words are made of syllables, and the
+ * last syllables spell the index of the word, so every word is unique. Each
+ * description is one line of about {@code words} words. Each of these words
+ * is a glossary word with probability {@code density}, and otherwise a filler
+ * word that is never a glossary word.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryGenerator {
+
+    /**
+     * Syllables of the glossary words, all of the same length so that the
+     * syllables of a word can be told apart.
+     */
+    private static final String[] SYLLABLES = { "ka", "lo", "mi", "nu", "pe",
+        "ra", "si", "to", "vu", "ze", "ba", "de", "fi", "go", "hu", "jo" };
+
+    /**
+     * Filler words; none is made of syllables.
+     */
+    private static final String[] FILLER = { "a", "the", "of", "and", "in",
+        "is", "which", "that", "used", "for", "with", "as", "by", "when",
+        "any", "each", "its", "one", "other", "form" };
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private GlossaryGenerator() {
+    }
+
+    /**
+     * Returns the name of word i.
+     *
+     * @param i
+     *            the index of the word
+     * @param random
+     *            source of the leading syllables
+     * @return the name, unique among the words
+     */
+    static String word(int i, SplittableRandom random) {
+        StringBuilder w = new StringBuilder();
+        w.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        int n = i;
+        do {
+            w.append(SYLLABLES[n % SYLLABLES.length]);
+            n /= SYLLABLES.length;
+        } while (n > 0);
+        return w.toString();
+    }
+
+    /**
+     * Returns the words of a glossary of the given size.
+     *
+     * @param terms
+     *            the number of words
+     * @param seed
+     *            the seed of the generator
+     * @return the words, in the order they are written
+     */
+    public static String[] words(int terms, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] words = new String[terms];
+        for (int i = 0; i < terms; i++) {
+            words[i] = word(i, random);
+        }
+        return words;
+    }
+
+    /**
+     * Writes a glossary into file.
+     *
+     * @param file
+     *            the output file
+     * @param terms
+     *            the number of words
+     * @param words
+     *            the average number of words of a description
+     * @param density
+     *            the probability that a word of a description is a glossary
+     *            word
+     * @param seed
+     *            the seed of the generator
+     * @throws IOException
+     *             if the file cannot be written
+     * @requires terms > 0 and words > 0 and 0 <= density <= 1
+     */
+    public static void write(Path file, int terms, int words, double density,
+            long seed) throws IOException {
+        assert terms > 0 : "Violation of: terms > 0";
+        assert words > 0 : "Violation of: words > 0";
+        assert 0 <= density && density <= 1
+                : "Violation of: 0 <= density <= 1";
+
+        String[] glossary = words(terms, seed);
+        SplittableRandom random = new SplittableRandom(seed + 1);
+        try (BufferedWriter out = Files.newBufferedWriter(file,
+                StandardCharsets.UTF_8)) {
+            for (String word : glossary) {
+                out.write(word);
+                out.newLine();
+                int n = words / 2 + 1 + random.nextInt(words);
+                for (int k = 0; k < n; k++) {
+                    if (k > 0) {
+                        out.write(random.nextInt(8) == 0 ? ", " : " ");
+                    }
+                    if (random.nextDouble() < density) {
+                        out.write(glossary[random.nextInt(terms)]);
+                    } else {
+                        out.write(FILLER[random.nextInt(FILLER.length)]);
+                    }
+                }
+                out.newLine();
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Main method: {@code GlossaryGenerator FILE TERMS [WORDS [DENSITY
+     * [SEED]]]}.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        final int words = 20;
+        final double density = 0.2;
+        write(Paths.get(args[0]), Integer.parseInt(args[1]),
+                args.length > 2 ? Integer.parseInt(args[2]) : words,
+                args.length > 3 ? Double.parseDouble(args[3]) : density,
+                args.length > 4 ? Long.parseLong(args[4]) : 1L);
+    }
+
+}
@@ -0,0 +1,264 @@
+package glossary.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import components.map.Map;
+import components.queue.Queue;
+import components.set.Set;
+import components.simplereader.SimpleReader;
+import components.simplewriter.SimpleWriter;
+
+/**
+ * Calls the methods of {@code Glossary} from the benchmarks.
+ *
+ * <p>
+ * JMH only runs benchmarks declared in a named package, and a class in a
+ * named package cannot refer to the classes of the default package, where
+ * {@code Glossary} lives. The methods are therefore looked up once into
+ * {@code static final} method handles, which the JIT treats as constants and
+ * inlines like direct calls.
+ *
+ * @author Bowei Kou
+ *
+ */
+final class GlossaryHandles {
+
+    /**
+     * {@code Glossary.readWord(SimpleReader, Map, Queue)}.
+     */
+    private static final MethodHandle READ_WORD;
+
+    /**
+     * {@code Glossary.writeDes(Map, String, TermLinker)}.
+     */
+    private static final MethodHandle WRITE_DES;
+
+    /**
+     * {@code Glossary.nextWordOrSeparator(String, int, Set)}.
+     */
+    private static final MethodHandle NEXT_WORD_OR_SEPARATOR;
+
+    /**
+     * {@code Glossary.generateElements(String, Set)}.
+     */
+    private static final MethodHandle GENERATE_ELEMENTS;
+
+    /**
+     * {@code Glossary.writeIndex(SimpleWriter, Queue)}.
+     */
+    private static final MethodHandle WRITE_INDEX;
+
+    /**
+     * {@code Glossary.writePage(SimpleWriter, Map, String)}.
+     */
+    private static final MethodHandle WRITE_PAGE;
+
+    /**
+     * {@code Glossary.build(String, String, String[])}.
+     */
+    private static final MethodHandle BUILD;
+
+    /**
+     * {@code new TermLinker(String[])}.
+     */
+    private static final MethodHandle NEW_LINKER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> glossary = Class.forName("Glossary");
+            Class<?> linker = Class.forName("TermLinker");
+            READ_WORD = lookup.findStatic(glossary, "readWord",
+                    MethodType.methodType(void.class, SimpleReader.class,
+                            Map.class, Queue.class));
+            WRITE_DES = lookup.findStatic(glossary, "writeDes", MethodType
+                    .methodType(void.class, Map.class, String.class, linker));
+            NEXT_WORD_OR_SEPARATOR = lookup.findStatic(glossary,
+                    "nextWordOrSeparator", MethodType.methodType(String.class,
+                            String.class, int.class, Set.class));
+            GENERATE_ELEMENTS = lookup.findStatic(glossary,
+                    "generateElements", MethodType.methodType(void.class,
+                            String.class, Set.class));
+            WRITE_INDEX = lookup.findStatic(glossary, "writeIndex", MethodType
+                    .methodType(void.class, SimpleWriter.class, Queue.class));
+            WRITE_PAGE = lookup.findStatic(glossary, "writePage",
+                    MethodType.methodType(void.class, SimpleWriter.class,
+                            Map.class, String.class));
+            BUILD = lookup.findStatic(glossary, "build", MethodType
+                    .methodType(void.class, String.class, String.class,
+                            String[].class));
+            NEW_LINKER = lookup.findConstructor(linker,
+                    MethodType.methodType(void.class, String[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private GlossaryHandles() {
+    }
+
+    /**
+     * Rethrows t if it is unchecked, or returns it wrapped otherwise.
+     *
+     * @param t
+     *            the throwable
+     * @return t wrapped in an unchecked exception
+     */
+    private static RuntimeException unchecked(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+
+    /**
+     * Calls {@code Glossary.readWord}.
+     *
+     * @param input
+     *            the input
+     * @param m
+     *            receives the words and descriptions
+     * @param q
+     *            receives the words
+     */
+    static void readWord(SimpleReader input, Map<String, String> m,
+            Queue<String> q) {
+        try {
+            READ_WORD.invoke(input, m, q);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.writeDes}.
+     *
+     * @param m
+     *            the words and descriptions
+     * @param word
+     *            the word
+     * @param linker
+     *            a {@code TermLinker} from {@link #newLinker(String[])}
+     */
+    static void writeDes(Map<String, String> m, String word, Object linker) {
+        try {
+            WRITE_DES.invoke(m, word, linker);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.nextWordOrSeparator}.
+     *
+     * @param text
+     *            the text
+     * @param position
+     *            the starting index
+     * @param separators
+     *            the separator characters
+     * @return the word or separator string at position
+     */
+    static String nextWordOrSeparator(String text, int position,
+            Set<Character> separators) {
+        try {
+            return (String) NEXT_WORD_OR_SEPARATOR.invoke(text, position,
+                    separators);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.generateElements}.
+     *
+     * @param str
+     *            the characters
+     * @param charSet
+     *            receives the characters of str
+     */
+    static void generateElements(String str, Set<Character> charSet) {
+        try {
+            GENERATE_ELEMENTS.invoke(str, charSet);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.writeIndex}.
+     *
+     * @param output
+     *            the output
+     * @param q
+     *            the words in lexicographic order
+     */
+    static void writeIndex(SimpleWriter output, Queue<String> q) {
+        try {
+            WRITE_INDEX.invoke(output, q);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.writePage}.
+     *
+     * @param output
+     *            the output
+     * @param m
+     *            the words and descriptions
+     * @param word
+     *            the word
+     */
+    static void writePage(SimpleWriter output, Map<String, String> m,
+            String word) {
+        try {
+            WRITE_PAGE.invoke(output, m, word);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * Calls {@code Glossary.build}.
+     *
+     * @param file
+     *            name of the input file
+     * @param name
+     *            name of the output folder
+     * @param args
+     *            the options
+     */
+    static void build(String file, String name, String[] args) {
+        try {
+            BUILD.invoke(file, name, args);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+    /**
+     * Returns {@code new TermLinker(terms)}.
+     *
+     * @param terms
+     *            the glossary terms
+     * @return the linker
+     */
+    static Object newLinker(String[] terms) {
+        try {
+            return NEW_LINKER.invoke(terms);
+        } catch (Throwable t) {
+            throw unchecked(t);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs every page of a glossary into one ZIP archive, streamed through a
+ * single buffered file channel, so that a large glossary costs one file
+ * instead of one file per word.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class ArchiveSink implements PageSink {
+
+    /**
+     * Size of the buffer in front of the channel.
+     */
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * The archive being written.
+     */
+    private final ZipOutputStream zip;
+
+    /**
+     * Opens the archive, replacing any existing file.
+     *
+     * @param file
+     *            the archive file
+     * @param level
+     *            the compression level, 0 to 9, or -1 for the default
+     * @throws IOException
+     *             if the archive cannot be created
+     */
+    public ArchiveSink(Path file, int level) throws IOException {
+        assert -1 <= level && level <= 9 : "Violation of: -1 <= level <= 9";
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.zip = new ZipOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(ch), BUFFER));
+        this.zip.setLevel(level);
+    }
+
+    @Override
+    public synchronized void write(String fileName, byte[] page)
+            throws IOException {
+        this.zip.putNextEntry(new ZipEntry(fileName));
+        this.zip.write(page);
+        this.zip.closeEntry();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.zip.close();
+    }
+
+}
@@ -0,0 +1,97 @@
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Sorts the words of a glossary in the order of a language.
+ *
+ * <p>
+ * Comparing two words with a {@code Collator} rebuilds their collation
+ * elements each time. Instead, the {@code CollationKey} of every word is
+ * computed once, in parallel (each thread with its own clone of the
+ * collator, which is not thread-safe), and the keys are sorted with
+ * {@code Arrays.parallelSort}. Words with equal keys keep the order of
+ * {@code String.compareTo}, so the result does not depend on the input
+ * order.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class Collation {
+
+    /**
+     * Order of the keys: by key, then by source string.
+     */
+    private static final Comparator<CollationKey> ORDER = (a, b) -> {
+        int r = a.compareTo(b);
+        if (r == 0) {
+            r = a.getSourceString().compareTo(b.getSourceString());
+        }
+        return r;
+    };
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Collation() {
+    }
+
+    /**
+     * Returns the collator of the language tag, such as {@code fr} or
+     * {@code de-CH}.
+     *
+     * @param tag
+     *            the IETF BCP 47 language tag
+     * @return a new collator for the language
+     */
+    public static Collator collator(String tag) {
+        return Collator.getInstance(Locale.forLanguageTag(tag));
+    }
+
+    /**
+     * Returns words sorted in the order of collator.
+     *
+     * @param words
+     *            the words
+     * @param collator
+     *            the collator
+     * @return the sorted words
+     */
+    public static String[] sort(String[] words, Collator collator) {
+        CollationKey[] keys = new CollationKey[words.length];
+        int parts = Runtime.getRuntime().availableProcessors();
+        int chunk = Math.max(1, (words.length + parts - 1) / parts);
+        IntStream.range(0, (words.length + chunk - 1) / chunk).parallel()
+                .forEach(k -> {
+                    Collator c = (Collator) collator.clone();
+                    int to = Math.min(words.length, (k + 1) * chunk);
+                    for (int i = k * chunk; i < to; i++) {
+                        keys[i] = c.getCollationKey(words[i]);
+                    }
+                });
+        Arrays.parallelSort(keys, ORDER);
+        String[] sorted = new String[words.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = keys[i].getSourceString();
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns a collator telling whether two letters are the same letter of
+     * the alphabet of collator, ignoring accents and case.
+     *
+     * @param collator
+     *            the collator
+     * @return a new collator of primary strength
+     */
+    public static Collator letters(Collator collator) {
+        Collator c = (Collator) collator.clone();
+        c.setStrength(Collator.PRIMARY);
+        return c;
+    }
+
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes each page of a glossary to its own file in a folder.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class FolderSink implements PageSink {
+
+    /**
+     * The output folder.
+     */
+    private final Path folder;
+
+    /**
+     * Constructor.
+     *
+     * @param folder
+     *            the output folder
+     */
+    public FolderSink(Path folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public void write(String fileName, byte[] page) throws IOException {
+        Files.write(this.folder.resolve(fileName), page);
+    }
+
+    @Override
+    public void write(String fileName, HtmlBuffer page) throws IOException {
+        try (FileChannel ch = FileChannel.open(this.folder.resolve(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            page.writeTo(ch);
+        }
+    }
+
+    @Override
+    public void close() {
+        // every page is closed as soon as it is written
+    }
+
+}
@@ -1,11 +1,19 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import components.map.Map;
-import components.map.Map1L;
 import components.queue.Queue;
 import components.queue.Queue1L;
 import components.set.Set;
-import components.set.Set1L;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
 import components.simplewriter.SimpleWriter;
@@ -19,6 +27,43 @@ import components.simplewriter.SimpleWriter1L;
  */
 public final class Glossary {
 
+    /**
+     * Template of the index page; the list of words goes in its slot.
+     */
+    private static final HtmlTemplate INDEX = HtmlTemplate.compile(""
+            + "<html>\n<head>\n<title>Glossary</title>\n</head>\n<body>\n"
+            + "<h2>Glossary</h2>\n<hr />\n<h3>Index</h3>\n<hr />\n<ul>\n"
+            + "{}</ul>\n</body>\n</html>\n");
+
+    /**
+     * Template of one entry of the index.
+     */
+    private static final HtmlTemplate ITEM = HtmlTemplate
+            .compile("<li><a href=\"{}.html\">{}</a></li>\n");
+
+    /**
+     * Template of a word page; the slots are the word, the word again, the
+     * linked description and the (usually empty) list of referrers.
+     */
+    private static final HtmlTemplate PAGE = HtmlTemplate.compile(""
+            + "<html>\n<head>\n<title>{}</title>\n</head>\n<body>\n"
+            + "<h2><b><i><font color=\"red\">{}</font></i></b></h2>\n"
+            + "<hr/>\n<blockquote>{}</blockquote>\n<hr/>\n{}"
+            + "<p>Return to <a href=\"index.html\">index</a>.</p>\n"
+            + "</body>\n</html>\n");
+
+    /**
+     * Template of the list of referrers of a word page.
+     */
+    private static final HtmlTemplate REFERRERS = HtmlTemplate
+            .compile("<p>Referenced by: {}.</p>\n<hr/>\n");
+
+    /**
+     * Template of the list of related words of a word page.
+     */
+    private static final HtmlTemplate RELATED = HtmlTemplate
+            .compile("<p>Related: {}.</p>\n<hr/>\n");
+
     /**
      * Private constructor so this utility class cannot be instantiated.
      */
@@ -36,7 +81,9 @@ public final class Glossary {
     }
 
     /**
-     * Store the word and its description into the map m.
+     * Store the word and its description into the map m. When a word
+     * appears twice, its last description wins and it is queued once, as
+     * {@code GlossaryTerms} reads it.
      *
      * @param input
      *            input stream with the input file
@@ -64,8 +111,12 @@ public final class Glossary {
                     }
                 }
             }
-            m.add(word, des.toString());
-            q.enqueue(word);
+            if (m.hasKey(word)) {
+                m.replaceValue(word, des.toString());
+            } else {
+                m.add(word, des.toString());
+                q.enqueue(word);
+            }
         }
     }
 
@@ -80,30 +131,54 @@ public final class Glossary {
      * @ensures print the index page with correct formal
      */
     public static void writeIndex(SimpleWriter output, Queue<String> q) {
-        //print the header
-        output.println("<html>");
-        output.println("<head>");
-        output.println("<title>Glossary</title>");
-        output.println("</head>");
-        output.println("<body>");
-        output.println("<h2>Glossary</h2>");
-        output.println("<hr />");
-        output.println("<h3>Index</h3>");
-        output.println("<hr />");
-        output.println("<ul>");
-        //print the list
-        Queue<String> tep = q.newInstance(); //temporary set
-        tep.transferFrom(q);
-        while (tep.length() != 0) {
-            String s = tep.dequeue();
-            output.print("<li><a href=\"" + s + ".html\">");
-            output.println(s + "</a></li>");
-            q.enqueue(s);
+        output.print(indexText(q));
+    }
+
+    /**
+     * Returns the index page by html formal, ending every line with the line
+     * separator {@code SimpleWriter.println} uses.
+     *
+     * @param q
+     *            queue which store the words in lexicographic order
+     * @return the text of the index page
+     * @requires q is in lexicographic order
+     * @ensures indexText is exactly what writeIndex prints for q
+     */
+    public static String indexText(Queue<String> q) {
+        HtmlBuffer page = new HtmlBuffer();
+        renderIndex(page, q);
+        return page.toString();
+    }
+
+    /**
+     * Renders the index page into out.
+     *
+     * @param out
+     *            the buffer receiving the page
+     * @param q
+     *            queue which store the words in lexicographic order
+     * @updates out
+     * @requires q is in lexicographic order
+     */
+    public static void renderIndex(HtmlBuffer out, Queue<String> q) {
+        renderIndex(out, (Iterable<String>) q);
+    }
+
+    /**
+     * Renders the index page into out.
+     *
+     * @param out
+     *            the buffer receiving the page
+     * @param words
+     *            the words in the order of the index
+     * @updates out
+     */
+    private static void renderIndex(HtmlBuffer out, Iterable<String> words) {
+        INDEX.fragment(out, 0);
+        for (String s : words) {
+            ITEM.render(out, s, s);
         }
-        //print the footer
-        output.println("</ul>");
-        output.println("</body>");
-        output.println("</html>");
+        INDEX.fragment(out, 1);
     }
 
     /**
@@ -169,22 +244,28 @@ public final class Glossary {
         assert 0 <= position : "Violation of: 0 <= position";
         assert position < text.length() : "Violation of: position < |text|";
 
-        int i = position; //check the length of word or separator
-        String str = ""; //result
-        StringBuilder s = new StringBuilder(str);
-        if (separators.contains(text.charAt(position))) {
-            while (i < text.length() && separators.contains(text.charAt(i))) {
-                s.append(text.charAt(i));
-                i++;
-            }
-        } else {
-            while (i < text.length() && !separators.contains(text.charAt(i))) {
-                s.append(text.charAt(i));
-                i++;
-            }
+        StringBuilder chars = new StringBuilder(); //separators as a string
+        for (char c : separators) {
+            chars.append(c);
+        }
+        return new Tokenizer(chars).next(text, position);
+    }
+
+    /**
+     * Returns a {@code TermLinker} for all the words of the glossary.
+     *
+     * @param m
+     *            Map which store the words and description
+     * @return the linker built from the keys of m
+     */
+    public static TermLinker newLinker(Map<String, String> m) {
+        String[] terms = new String[m.size()];
+        int i = 0;
+        for (Map.Pair<String, String> p : m) {
+            terms[i] = p.key();
+            i++;
         }
-        str = s.toString();
-        return str;
+        return new TermLinker(terms);
     }
 
     /**
@@ -200,32 +281,33 @@ public final class Glossary {
      *          exists in the glossary
      */
     public static void writeDes(Map<String, String> m, String word) {
-        /*
-         * Define separator characters
-         */
-        final String sep = " \t, "; // separator string
-        Set<Character> s = new Set1L<>(); // the set store the separator
-        generateElements(sep, s);
-
-        final String s1 = "<a href=\"";
-        final String s2 = ".html\">";
-        final String s3 = "</a>";
-        StringBuilder result = new StringBuilder(m.value(word));
-        int position = 0;
-        while (position < result.length()) {
-            String token = nextWordOrSeparator(result.toString(), position, s);
-            if ((!s.contains(token.charAt(0))) && m.hasKey(token)) {
-                result.replace(position, position + token.length(),
-                        s1 + token + s2 + token + s3);
-                position += s1.length() + s2.length() + s3.length();
-            }
-            position += token.length();
-        }
-        m.replaceValue(word, result.toString());
+        writeDes(m, word, newLinker(m));
+    }
+
+    /**
+     * Update the description with link, using a linker built once for the
+     * whole glossary.
+     *
+     * @param m
+     *            Map which store the words and description
+     * @param word
+     *            The name of word
+     * @param linker
+     *            linker built from the keys of m
+     * @updates m
+     * @requires linker = newLinker(m)
+     * @ensures Description has link to the Corresponding page when a word
+     *          exists in the glossary
+     */
+    public static void writeDes(Map<String, String> m, String word,
+            TermLinker linker) {
+        m.replaceValue(word, linker.link(m.value(word)));
     }
 
     /**
-     * Print the word page by html formal.
+     * Print the word page by html formal. The description is printed as
+     * writeDes left it: html, with the links in place and the rest of the
+     * text already escaped.
      *
      * @param output
      *            output stream to print the targeted html file
@@ -238,62 +320,668 @@ public final class Glossary {
      */
     public static void writePage(SimpleWriter output, Map<String, String> m,
             String word) {
-        output.println("<html>");
-        output.println("<head>");
-        output.println("<title>" + word + "</title>");
-        output.println("</head>");
-        output.println("<body>");
-        output.print("<h2><b><i><font color=\"red\">");
-        output.println(word + "</font></i></b></h2>");
-        output.println("<hr/>");
-        output.print("<blockquote>");
-        output.print(m.value(word));
-        output.println("</blockquote>");
-        output.println("<hr/>");
-        output.println("<p>Return to <a href=\"index.html\">index</a>.</p>");
-        output.println("</body>");
-        output.println("</html>");
+        output.print(pageText(word, m.value(word)));
+    }
+
+    /**
+     * Returns the word page by html formal, ending every line with the line
+     * separator {@code SimpleWriter.println} uses.
+     *
+     * @param word
+     *            The name of word
+     * @param des
+     *            The description of word, as linked by writeDes
+     * @return the text of the word page
+     * @ensures pageText is exactly what writePage prints for word
+     */
+    public static String pageText(String word, String des) {
+        HtmlBuffer page = new HtmlBuffer();
+        PAGE.fragment(page, 0);
+        page.escaped(word);
+        PAGE.fragment(page, 1);
+        page.escaped(word);
+        PAGE.fragment(page, 2);
+        page.raw(des);
+        PAGE.fragment(page, 3);
+        PAGE.fragment(page, 4);
+        return page.toString();
+    }
+
+    /**
+     * Renders the word page into out, linking the description on the way.
+     *
+     * @param out
+     *            the buffer receiving the page
+     * @param word
+     *            The name of word
+     * @param des
+     *            The description of word, not linked yet
+     * @param linker
+     *            linker built from every word of the glossary
+     * @updates out
+     * @ensures out has the bytes of pageText(word, linker.link(des)) appended
+     */
+    public static void renderPage(HtmlBuffer out, String word,
+            CharSequence des, TermLinker linker) {
+        PAGE.fragment(out, 0);
+        out.escaped(word);
+        PAGE.fragment(out, 1);
+        out.escaped(word);
+        PAGE.fragment(out, 2);
+        linker.link(des, out);
+        PAGE.fragment(out, 3);
+        PAGE.fragment(out, 4);
+    }
+
+    /**
+     * Renders the word page into out from the links recorded in graph, and
+     * lists the words whose description links to word.
+     *
+     * @param out
+     *            the buffer receiving the page
+     * @param word
+     *            The name of word
+     * @param des
+     *            The description of word, as graph scanned it
+     * @param linker
+     *            linker built from every word of the glossary
+     * @param graph
+     *            the links of every description, or null to link des now
+     * @updates out
+     * @ensures without referrers, out has the bytes of renderPage(out, word,
+     *          des, linker) appended
+     */
+    public static void renderPage(HtmlBuffer out, String word,
+            CharSequence des, TermLinker linker, LinkGraph graph) {
+        renderPage(out, word, des, linker, graph, null);
+    }
+
+    /**
+     * Renders the word page into out, with the referrers of word when graph
+     * is given, and lists the words whose description is most like the one
+     * of word.
+     *
+     * @param out
+     *            the buffer receiving the page
+     * @param word
+     *            The name of word
+     * @param des
+     *            The description of word, as graph scanned it
+     * @param linker
+     *            linker built from every word of the glossary
+     * @param graph
+     *            the links of every description, or null to link des now
+     * @param related
+     *            the related words of every word, or null
+     * @updates out
+     * @ensures without referrers and related words, out has the bytes of
+     *          renderPage(out, word, des, linker) appended
+     */
+    public static void renderPage(HtmlBuffer out, String word,
+            CharSequence des, TermLinker linker, LinkGraph graph,
+            RelatedTerms related) {
+        int s = linker.ordinal(word);
+        PAGE.fragment(out, 0);
+        out.escaped(word);
+        PAGE.fragment(out, 1);
+        out.escaped(word);
+        PAGE.fragment(out, 2);
+        if (graph == null) {
+            linker.link(des, out);
+        } else {
+            graph.link(s, des, out);
+        }
+        PAGE.fragment(out, 3);
+        if (graph != null && graph.referrers(s).length > 0) {
+            REFERRERS.fragment(out, 0);
+            graph.renderReferrers(s, out);
+            REFERRERS.fragment(out, 1);
+        }
+        if (related != null && related.related(s).length > 0) {
+            RELATED.fragment(out, 0);
+            related.render(s, out);
+            RELATED.fragment(out, 1);
+        }
+        PAGE.fragment(out, 4);
+    }
+
+    /**
+     * Returns the value of the command line option {@code -name=value}.
+     *
+     * @param args
+     *            the command line arguments
+     * @param name
+     *            the name of the option
+     * @param otherwise
+     *            the value to use when the option is absent
+     * @return the value of the option, or otherwise
+     */
+    private static String option(String[] args, String name,
+            String otherwise) {
+        String prefix = "-" + name + "=";
+        String value = otherwise;
+        for (String a : args) {
+            if (a.startsWith(prefix)) {
+                value = a.substring(prefix.length());
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reports whether the command line flag {@code -name} is present.
+     *
+     * @param args
+     *            the command line arguments
+     * @param name
+     *            the name of the flag
+     * @return true if the flag is present
+     */
+    private static boolean flag(String[] args, String name) {
+        boolean found = false;
+        for (String a : args) {
+            found |= a.equals("-" + name);
+        }
+        return found;
+    }
+
+    /**
+     * Generates the glossary of file into the output folder name, or serves
+     * it. The file is read as UTF-8; a word that appears twice keeps its last
+     * description and gets one page.
+     *
+     * <p>
+     * Options: {@code -threads=N} renders and writes the pages with the
+     * pipeline of {@code GlossaryPipeline} on N workers ({@code 0} means one
+     * per core); without it the pages are written one at a time.
+     * {@code -incremental} only writes the pages whose description or links
+     * changed since the last run, as recorded by {@code GlossaryManifest},
+     * and the index only when the set of words changed. {@code -mapped}
+     * reads the input through {@code MappedTerms}, so the descriptions stay
+     * in the file until their page is rendered; otherwise they are all
+     * decoded up front into {@code GlossaryTerms}. {@code -index=letter} or
+     * {@code -index=N} splits the index into shards, one per leading
+     * character or of N words each, written by {@code GlossaryIndex}.
+     * {@code -archive} packs every page into {@code name.zip} instead of the
+     * folder, compressed at {@code -level=0..9}; it always writes every page.
+     * {@code -serve=PORT} writes nothing and serves the pages over HTTP with
+     * {@code GlossaryServer} instead, caching up to {@code -cache=BYTES} of
+     * rendered pages (64 MiB by default), on the loopback address unless
+     * {@code -bind=ADDRESS} names another. {@code -watch} keeps running after
+     * the pages are written and, through {@code GlossaryWatcher}, rewrites
+     * only the affected pages of the folder each time file changes, with the
+     * same options.
+     * {@code -gzip} also writes a gzip copy {@code <page>.gz} of every page of
+     * at least {@code -gzip-min=BYTES} (1024 by default) with
+     * {@code GzipSink}, compressed while the next pages are rendered; a page
+     * whose content did not change keeps its copy, and a run without
+     * {@code -gzip} deletes the copies of earlier runs.
+     * {@code -locale=TAG} sorts the words in the order of the language TAG
+     * (such as {@code fr}) with {@code Collation} instead of
+     * {@code String.compareTo}; the index, its shards and the ordinals of the
+     * words follow that order. {@code -search}
+     * also writes the full-text index of {@code SearchIndex}, built while the
+     * pages are rendered.
+     * {@code -backlinks} scans every description once into a
+     * {@code LinkGraph}, renders the pages from it with the words that link
+     * to each one, and writes the orphans and link cycles to
+     * {@code links.html}; it always writes every page. {@code -snapshot=FILE}
+     * saves the parsed, sorted and linked glossary into FILE with
+     * {@code GlossarySnapshot}, and the next runs map it instead of parsing
+     * and linking again, as long as the input file and {@code -locale} are
+     * unchanged. {@code -related=K} lists on each page the K words whose
+     * descriptions are most alike, found by {@code RelatedTerms}; like
+     * {@code -backlinks}, it always writes every page.
+     *
+     * @param file
+     *            name of the input file
+     * @param name
+     *            name of the output folder
+     * @param args
+     *            the options
+     * @throws IOException
+     *             if the input cannot be read or a page cannot be written
+     * @throws IllegalArgumentException
+     *             if {@code -index} is neither letter nor a positive number
+     */
+    public static void build(String file, String name, String[] args)
+            throws IOException {
+        build(file, name, args, null);
+    }
+
+    /**
+     * Returns the {@code -index} option of a run, checked.
+     *
+     * @param args
+     *            the options
+     * @return {@code letter}, a positive number of words per shard, or null
+     *         without the option
+     * @throws IllegalArgumentException
+     *             if the option is neither {@code letter} nor a positive
+     *             number
+     */
+    static String indexMode(String[] args) {
+        String mode = option(args, "index", null);
+        if (mode != null && !mode.equals(GlossaryIndex.BY_LETTER)) {
+            int size = 0;
+            try {
+                size = Integer.parseInt(mode);
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            if (size <= 0) {
+                throw new IllegalArgumentException("-index=" + mode
+                        + ": expected letter or a positive number of words");
+            }
+        }
+        return mode;
+    }
+
+    /**
+     * Generates the glossary of file into the output folder name like
+     * {@link #build(String, String, String[])}, counting what is done in
+     * summary.
+     *
+     * @param file
+     *            name of the input file
+     * @param name
+     *            name of the output folder
+     * @param args
+     *            the options
+     * @param summary
+     *            the summary of the job of a batch, or null
+     * @updates summary
+     * @throws IOException
+     *             if the input cannot be read or a page cannot be written
+     * @throws IllegalArgumentException
+     *             if {@code -index} is neither letter nor a positive number
+     */
+    static void build(String file, String name, String[] args,
+            GlossaryBatch.Summary summary) throws IOException {
+        indexMode(args); //before any work
+        String[] words; //in the order of the index
+        Function<String, String> des; //description of each word
+        String locale = option(args, "locale", null);
+        String threads = option(args, "threads", null);
+        int t = threads == null ? 0 : Integer.parseInt(threads);
+        String snapshot = option(args, "snapshot", null);
+        GlossarySnapshot snap = snapshot == null ? null
+                : GlossarySnapshot.load(Paths.get(snapshot), Paths.get(file),
+                        locale);
+        TermLinker linker;
+        LinkGraph graph = null; //links of every description, if known
+        if (snap != null) {
+            // parsed, sorted and linked by an earlier run
+            words = snap.words();
+            TermLinker l = new TermLinker(words);
+            des = word -> snap.definition(l.ordinal(word));
+            linker = l;
+            graph = snap.graph();
+        } else {
+            MappedTerms mapped = MappedTerms.open(Paths.get(file));
+            if (flag(args, "mapped")) {
+                words = mapped.words(); //already sorted
+                des = mapped::definition;
+            } else {
+                // words by ordinal, descriptions decoded once
+                GlossaryTerms terms = GlossaryTerms.of(mapped);
+                words = terms.words(); //already sorted
+                des = terms::definition;
+            }
+            if (locale != null) {
+                words = Collation.sort(words, Collation.collator(locale));
+            }
+            //built once for every page, ordinals in the order of the index
+            linker = new TermLinker(words);
+            if (snapshot != null) {
+                graph = LinkGraph.build(linker, des, t);
+                // the hash of the bytes parsed, even if file changed since
+                GlossarySnapshot.write(Paths.get(snapshot), mapped, locale,
+                        words, des, graph);
+            }
+        }
+
+        if (summary != null) {
+            summary.terms(words.length);
+        }
+
+        String port = option(args, "serve", null);
+        if (port != null) {
+            GlossaryServer server = new GlossaryServer(queue(words), des,
+                    linker,
+                    Long.parseLong(option(args, "cache", "67108864")));
+            String bind = option(args, "bind", null);
+            if (bind == null) {
+                server.start(Integer.parseInt(port));
+            } else {
+                server.start(InetAddress.getByName(bind),
+                        Integer.parseInt(port));
+            }
+        } else {
+            write(words, des, linker, graph, name, args, summary);
+            if (flag(args, "watch")) {
+                new GlossaryWatcher(Paths.get(file), Paths.get(name), args)
+                        .run();
+            }
+        }
+    }
+
+    /**
+     * Returns the words in a queue.
+     *
+     * @param words
+     *            the words
+     * @return a queue of the words, in the order of words
+     */
+    static Queue<String> queue(String[] words) {
+        Queue<String> q = new Queue1L<>();
+        for (String word : words) {
+            q.enqueue(word);
+        }
+        return q;
+    }
+
+    /**
+     * Returns the options of a run that shape its pages and index, in a fixed
+     * order, for the manifest of {@code -incremental}.
+     *
+     * @param args
+     *            the options
+     * @return the {@code -locale}, {@code -index}, {@code -backlinks},
+     *         {@code -related} and {@code -gzip} options of args, separated
+     *         by spaces
+     */
+    static String pageOptions(String[] args) {
+        StringBuilder s = new StringBuilder();
+        for (String name : new String[] { "locale", "index", "related" }) {
+            String value = option(args, name, null);
+            if (value != null) {
+                s.append(" -").append(name).append('=').append(value);
+            }
+        }
+        if (flag(args, "backlinks")) {
+            s.append(" -backlinks");
+        }
+        if (flag(args, "gzip")) {
+            // the unchanged pages get no copy unless every page is written
+            s.append(" -gzip -gzip-min=")
+                    .append(option(args, "gzip-min", "1024"));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Returns the sink the options of a run write the pages of the output
+     * folder name to.
+     *
+     * @param name
+     *            name of the output folder
+     * @param args
+     *            the options
+     * @return a zip archive with {@code -archive}, the folder with gzip
+     *         copies with {@code -gzip}, otherwise the folder
+     * @throws IOException
+     *             if the sink cannot be opened
+     */
+    static PageSink sink(String name, String[] args) throws IOException {
+        return sink(name, args, null);
+    }
+
+    /**
+     * Returns the sink the options of a run write the pages of the output
+     * folder name to, counting in summary every file it writes, gzip copies
+     * included.
+     *
+     * @param name
+     *            name of the output folder
+     * @param args
+     *            the options
+     * @param summary
+     *            counts the bytes written, or null
+     * @return a zip archive with {@code -archive}, the folder with gzip
+     *         copies with {@code -gzip}, otherwise the folder
+     * @throws IOException
+     *             if the sink cannot be opened
+     */
+    static PageSink sink(String name, String[] args,
+            GlossaryBatch.Summary summary) throws IOException {
+        Path folder = Paths.get(name);
+        boolean archive = flag(args, "archive");
+        PageSink files = archive
+                ? new ArchiveSink(Paths.get(name + ".zip"),
+                        Integer.parseInt(option(args, "level", "-1")))
+                : new FolderSink(folder);
+        if (summary != null) {
+            files = summary.count(files);
+        }
+        PageSink sink = files;
+        if (!archive && flag(args, "gzip")) {
+            String threads = option(args, "threads", null);
+            int t = threads == null ? 0 : Integer.parseInt(threads);
+            sink = new GzipSink(files, folder,
+                    Integer.parseInt(option(args, "gzip-min", "1024")), t);
+        }
+        return sink;
+    }
+
+    /**
+     * Sorts words in the order the options of a run ask for.
+     *
+     * @param words
+     *            the words
+     * @param args
+     *            the options
+     * @return the words in the order of {@code -locale}, or in
+     *         {@code String.compareTo} order without it
+     */
+    static String[] sort(String[] words, String[] args) {
+        String locale = option(args, "locale", null);
+        String[] sorted;
+        if (locale != null) {
+            sorted = Collation.sort(words, Collation.collator(locale));
+        } else {
+            sorted = words.clone();
+            Arrays.sort(sorted);
+        }
+        return sorted;
+    }
+
+    /**
+     * Writes the index of the glossary to sink, split into shards when the
+     * options ask for it, and deletes from folder the shards of earlier runs
+     * that were not written again.
+     *
+     * @param sink
+     *            where the index is written
+     * @param words
+     *            the words in the order of the index
+     * @param args
+     *            the options
+     * @param folder
+     *            the output folder sink writes to, or null if it is not a
+     *            folder
+     * @throws IOException
+     *             if a page cannot be written
+     */
+    static void writeIndex(PageSink sink, String[] words, String[] args,
+            Path folder) throws IOException {
+        String shards = indexMode(args);
+        List<String> keep = new ArrayList<>();
+        if (shards != null) {
+            String locale = option(args, "locale", null);
+            keep.addAll(GlossaryIndex.write(words, sink, shards,
+                    locale == null ? null
+                            : Collation.letters(
+                                    Collation.collator(locale))));
+        } else {
+            HtmlBuffer page = new HtmlBuffer();
+            renderIndex(page, Arrays.asList(words));
+            sink.write("index.html", page);
+        }
+        if (folder != null) {
+            // a word page may look like a shard
+            for (String word : words) {
+                keep.add(word + ".html");
+            }
+            GlossaryIndex.removeStale(folder, keep);
+        }
+    }
+
+    /**
+     * Writes the pages of the glossary into the output folder name.
+     *
+     * @param words
+     *            the words in the order of the index
+     * @param des
+     *            gives the description of each word
+     * @param linker
+     *            linker built from every word
+     * @param graph
+     *            the links of every description, or null if not known yet
+     * @param name
+     *            name of the output folder
+     * @param args
+     *            the options
+     * @param summary
+     *            counts the pages written, or null
+     * @throws IOException
+     *             if a page cannot be written
+     */
+    static void write(String[] words, Function<String, String> des,
+            TermLinker linker, LinkGraph graph, String name, String[] args,
+            GlossaryBatch.Summary summary) throws IOException {
+        Queue<String> q = queue(words);
+        Path folder = Paths.get(name);
+        boolean archive = flag(args, "archive");
+        boolean backlinks = flag(args, "backlinks");
+        String k = option(args, "related", null);
+        Queue<String> pages = q; //words whose page is written
+        boolean index = true; //whether the index is written
+        GlossaryManifest manifest = null;
+        if (flag(args, "incremental") && !archive && !backlinks && k == null) {
+            manifest = GlossaryManifest.of(q, des, linker, graph);
+            manifest.options(pageOptions(args));
+            GlossaryManifest old = GlossaryManifest.load(folder);
+            // pages of other options are all out of date
+            boolean same = manifest.sameOptions(old);
+            index = !same || !manifest.sameWords(old)
+                    || !Files.exists(folder.resolve("index.html"));
+            if (same) {
+                pages = manifest.changedSince(q, old, folder);
+            }
+            manifest.removeStale(old, folder);
+        } else if (!archive) {
+            // every page is written, maybe with other options
+            Files.deleteIfExists(folder.resolve(GlossaryManifest.FILE_NAME));
+        }
+
+        if (!archive && !flag(args, "gzip")) {
+            GzipSink.removeAll(folder);
+        }
+
+        String threads = option(args, "threads", null);
+        int t = threads == null ? 0 : Integer.parseInt(threads);
+        try (PageSink sink = sink(name, args, summary)) {
+            CompletableFuture<SearchIndex> search = null;
+            if (flag(args, "search")) {
+                // built alongside the pages
+                search = CompletableFuture.supplyAsync(
+                        () -> SearchIndex.build(words, des, t));
+            }
+            //print index html file
+            if (index) {
+                writeIndex(sink, words, args, archive ? null : folder);
+            }
+            LinkGraph links = null; //the pages list their referrers
+            if (backlinks) {
+                // the only scan of the descriptions; pages reuse its links
+                links = graph != null ? graph
+                        : LinkGraph.build(linker, des, t);
+                links.writeReport(sink);
+            }
+            RelatedTerms related = null;
+            if (k != null) {
+                related = RelatedTerms.build(words, des,
+                        Integer.parseInt(k), t);
+            }
+            if (threads != null) {
+                // print word html files on every core
+                GlossaryPipeline.generate(pages, des, linker, links, related,
+                        sink, t);
+            } else {
+                // print word html file
+                HtmlBuffer page = new HtmlBuffer(); //reused for every page
+                for (String word : pages) {
+                    page.clear();
+                    renderPage(page, word, des.apply(word), linker, links,
+                            related);
+                    sink.write(word + ".html", page);
+                }
+            }
+            List<String> searchFiles = new ArrayList<>();
+            if (search != null) {
+                searchFiles.addAll(search.join().write(sink, 2));
+            }
+            if (!archive) {
+                SearchIndex.removeStale(folder, searchFiles);
+            }
+            if (summary != null) {
+                summary.pages(pages.length());
+            }
+        }
+        if (manifest != null) {
+            manifest.save(folder);
+        }
     }
 
     /**
      * Main method.
      *
+     * <p>
+     * The options are those of {@link #build(String, String, String[])}.
+     * {@code -batch=FILE} asks for nothing and builds every glossary listed
+     * in the job manifest FILE with {@code GlossaryBatch}, on {@code -jobs=N}
+     * threads (one per core by default), then prints a summary of each job.
+     *
      * @param args
      *            the command line arguments
      */
     public static void main(String[] args) {
         SimpleReader in = new SimpleReader1L(); //input stream for console
         SimpleWriter out = new SimpleWriter1L(); //output stream for console
-        SimpleReader input; //input stream to read input file
-        SimpleWriter output; //output stream to print the html file
 
-        //(use terms.txt as final test)
-        out.println("please enter the name of the input file: ");
-        input = new SimpleReader1L(in.nextLine());
-        //(use finalTest folder as final test)
-        out.println("please enter the name of the output folder: ");
-        String name = in.nextLine(); //name of folder
-
-        Queue<String> q = new Queue1L<>();
-        Map<String, String> m = new Map1L<>(); // map store the word and description
-        readWord(input, m, q);
-        Comparator<String> c = new StringLT();
-        q.sort(c);
-        //print index html file
-        output = new SimpleWriter1L(name + "/index.html");
-        writeIndex(output, q);
-        // print word html file
-        while (q.length() != 0) {
-            String word = q.dequeue();
-            output = new SimpleWriter1L(name + "/" + word + ".html");
-            writeDes(m, word);
-            writePage(output, m, word);
+        List<GlossaryBatch.Summary> done = new ArrayList<>(); //batch jobs
+        String batch = option(args, "batch", null);
+        if (batch != null) {
+            try {
+                int jobs = Integer.parseInt(option(args, "jobs", "0"));
+                done.addAll(GlossaryBatch.run(Paths.get(batch), args, jobs));
+                for (GlossaryBatch.Summary s : done) {
+                    out.println(s.toString());
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading job manifest " + e);
+            }
+        } else {
+            //(use terms.txt as final test)
+            out.println("please enter the name of the input file: ");
+            String file = in.nextLine(); //name of input file
+            //(use finalTest folder as final test)
+            out.println("please enter the name of the output folder: ");
+            String name = in.nextLine(); //name of folder
+            try {
+                build(file, name, args);
+            } catch (IOException e) {
+                System.err.println("Error generating glossary " + e);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Error in the options: " + e.getMessage());
+            }
         }
 
         in.close();
         out.close();
-        input.close();
-        output.close();
+        // once every job is reported
+        BatchJob.rethrowErrors(done);
     }
 
 }
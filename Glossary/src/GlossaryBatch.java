@@ -0,0 +1,253 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds many glossaries in one run, listed in a job manifest.
+ *
+ * <p>
+ * The manifest has one job per line: the input file, a tab, the output
+ * folder and, optionally, another tab and options for that job only, which
+ * are added to the options of the run. Blank lines and lines starting with
+ * {@code #} are skipped. The jobs run as a {@code BatchJob} batch, the
+ * largest inputs first, so the parallel parts of a build (parsing, sorting,
+ * the link scan) share its pool; a job that waits on the pipeline of
+ * {@code -threads} tells the pool, which then adds a thread in its place.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryBatch {
+
+    /**
+     * Options of the run that make no sense for a job of a batch.
+     */
+    private static final List<String> NOT_FOR_JOBS = Arrays.asList("batch",
+            "jobs", "serve", "watch");
+
+    /**
+     * What one job did.
+     */
+    public static final class Summary extends BatchJob {
+
+        /**
+         * Name of the input file.
+         */
+        private final String input;
+
+        /**
+         * Name of the output folder.
+         */
+        private final String output;
+
+        /**
+         * The options of the job.
+         */
+        private final String[] args;
+
+        /**
+         * Number of words in the glossary.
+         */
+        private int terms;
+
+        /**
+         * Number of term pages written.
+         */
+        private long pages;
+
+        /**
+         * Number of bytes written, in every file.
+         */
+        private final AtomicLong bytes = new AtomicLong();
+
+        /**
+         * Constructor.
+         *
+         * @param input
+         *            name of the input file
+         * @param output
+         *            name of the output folder
+         * @param args
+         *            the options of the job
+         */
+        Summary(String input, String output, String[] args) {
+            this.input = input;
+            this.output = output;
+            this.args = args;
+        }
+
+        /**
+         * Records the number of words.
+         *
+         * @param n
+         *            the number of words
+         */
+        void terms(int n) {
+            this.terms = n;
+        }
+
+        /**
+         * Records the number of term pages written.
+         *
+         * @param n
+         *            the number of pages
+         */
+        void pages(long n) {
+            this.pages = n;
+        }
+
+        /**
+         * Returns target, counting the bytes written through it.
+         *
+         * @param target
+         *            where the pages are written
+         * @return a sink writing to target
+         */
+        PageSink count(PageSink target) {
+            return new PageSink() {
+                @Override
+                public void write(String fileName, byte[] page)
+                        throws IOException {
+                    target.write(fileName, page);
+                    Summary.this.bytes.addAndGet(page.length);
+                }
+
+                @Override
+                public void write(String fileName, HtmlBuffer page)
+                        throws IOException {
+                    target.write(fileName, page);
+                    Summary.this.bytes.addAndGet(page.length());
+                }
+
+                @Override
+                public void close() throws IOException {
+                    target.close();
+                }
+            };
+        }
+
+        @Override
+        protected void work() throws IOException {
+            Glossary.build(this.input, this.output, this.args, this);
+        }
+
+        @Override
+        protected long size() {
+            return new File(this.input).length();
+        }
+
+        /**
+         * Returns the number of words in the glossary.
+         *
+         * @return the number of words
+         */
+        public int terms() {
+            return this.terms;
+        }
+
+        /**
+         * Returns the number of term pages written, leaving out the index,
+         * its shards and the other files of the glossary.
+         *
+         * @return the number of pages
+         */
+        public long pages() {
+            return this.pages;
+        }
+
+        /**
+         * Returns the number of bytes of every file written.
+         *
+         * @return the number of bytes
+         */
+        public long bytes() {
+            return this.bytes.get();
+        }
+
+        @Override
+        public String toString() {
+            return this.input + " -> " + this.output + ": "
+                    + this.outcome(this.terms + " terms, " + this.pages()
+                            + " pages, " + this.bytes() + " bytes");
+        }
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private GlossaryBatch() {
+    }
+
+    /**
+     * Reads the jobs of a manifest.
+     *
+     * @param manifest
+     *            the job manifest
+     * @param args
+     *            the options of the run
+     * @return a summary for each job, in the order of the manifest
+     * @throws IOException
+     *             if the manifest cannot be read or a line has no output
+     *             folder
+     */
+    public static List<Summary> jobs(Path manifest, String[] args)
+            throws IOException {
+        List<String> common = new ArrayList<>();
+        for (String a : args) {
+            String name = a.startsWith("-") ? a.substring(1).split("=")[0]
+                    : a;
+            if (!NOT_FOR_JOBS.contains(name)) {
+                common.add(a);
+            }
+        }
+        List<Summary> jobs = new ArrayList<>();
+        int n = 0;
+        for (String line : Files.readAllLines(manifest,
+                StandardCharsets.UTF_8)) {
+            n++;
+            if (!line.isBlank() && !line.startsWith("#")) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length < 2) {
+                    throw new IOException(manifest + ":" + n
+                            + ": expected input<TAB>output[<TAB>options]");
+                }
+                List<String> options = new ArrayList<>(common);
+                if (fields.length == 3 && !fields[2].isBlank()) {
+                    options.addAll(Arrays.asList(fields[2].trim().split(" +")));
+                }
+                jobs.add(new Summary(fields[0], fields[1],
+                        options.toArray(new String[0])));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs the jobs of a manifest on a shared pool of threads.
+     *
+     * @param manifest
+     *            the job manifest
+     * @param args
+     *            the options of the run
+     * @param threads
+     *            the number of threads, or 0 for one per core
+     * @return a summary for each job, in the order of the manifest
+     * @throws IOException
+     *             if the manifest cannot be read
+     */
+    public static List<Summary> run(Path manifest, String[] args, int threads)
+            throws IOException {
+        assert threads >= 0 : "Violation of: threads >= 0";
+
+        List<Summary> jobs = jobs(manifest, args);
+        BatchJob.runAll(jobs, threads);
+        return jobs;
+    }
+
+}
@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Writes the index of a large glossary as several shard pages and a small
+ * top-level {@code index.html} that links to them.
+ *
+ * <p>
+ * The words are split either by their leading character ({@code letter}) or
+ * into pages of a fixed number of words. The shards are cut from the already
+ * sorted words and written in parallel. A letter gets a single shard even
+ * when its words are not all next to each other, as when a collator ignores
+ * the leading characters of some words. The file names of the shards differ
+ * in more than case, so they do not overwrite each other on file systems
+ * that ignore case, and the shards an earlier run left in a folder can be
+ * told apart and removed.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryIndex {
+
+    /**
+     * Mode that makes one shard per leading character.
+     */
+    public static final String BY_LETTER = "letter";
+
+    /**
+     * The file names of the shards and of their gzip copies.
+     */
+    private static final Pattern SHARD_FILE = Pattern
+            .compile("index-[0-9a-z]+(-upper)?\\.html(\\.gz)?");
+
+    /**
+     * Template of the top-level index; the links go in its slot.
+     */
+    private static final HtmlTemplate TOP = HtmlTemplate.compile(""
+            + "<html>\n<head>\n<title>Glossary</title>\n</head>\n<body>\n"
+            + "<h2>Glossary</h2>\n<hr />\n<h3>Index</h3>\n<hr />\n<ul>\n"
+            + "{}</ul>\n</body>\n</html>\n");
+
+    /**
+     * Template of a shard page; the slots are its label and its links.
+     */
+    private static final HtmlTemplate SHARD = HtmlTemplate.compile(""
+            + "<html>\n<head>\n<title>Glossary</title>\n</head>\n<body>\n"
+            + "<h2>Glossary</h2>\n<hr />\n<h3>Index: {}</h3>\n<hr />\n"
+            + "<ul>\n{}</ul>\n<hr />\n"
+            + "<p>Return to <a href=\"index.html\">index</a>.</p>\n"
+            + "</body>\n</html>\n");
+
+    /**
+     * Template of one link of a list; the slots are the target and the text.
+     */
+    private static final HtmlTemplate LINK = HtmlTemplate
+            .compile("<li><a href=\"{}\">{}</a></li>\n");
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private GlossaryIndex() {
+    }
+
+    /**
+     * Returns the file name of a shard keyed by a leading character; an
+     * upper-case ASCII letter is named after its lower case with
+     * {@code -upper} appended.
+     *
+     * @param c
+     *            the leading character, as a code point
+     * @return the file name of the shard
+     */
+    static String letterFile(int c) {
+        String name;
+        if (c >= 'A' && c <= 'Z') {
+            name = "index-" + (char) (c - 'A' + 'a') + "-upper.html";
+        } else if (c < 128 && Character.isLetterOrDigit(c)) {
+            name = "index-" + (char) c + ".html";
+        } else {
+            name = "index-u" + Integer.toHexString(c) + ".html";
+        }
+        return name;
+    }
+
+    /**
+     * Reports whether code points a and b are the same letter.
+     *
+     * @param a
+     *            the first letter
+     * @param b
+     *            the second letter
+     * @param letters
+     *            tells whether two letters are the same, or null to compare
+     *            them exactly
+     * @return true if a and b are the same letter
+     */
+    private static boolean sameLetter(int a, int b, Collator letters) {
+        return a == b || (letters != null
+                && letters.compare(new String(Character.toChars(a)),
+                        new String(Character.toChars(b))) == 0);
+    }
+
+    /**
+     * Writes the top-level index and its shards to sink.
+     *
+     * @param words
+     *            the words, sorted
+     * @param sink
+     *            where the pages are written
+     * @param mode
+     *            {@link #BY_LETTER}, or the number of words per shard
+     * @return the file names of the shards
+     * @throws IOException
+     *             if a page cannot be written
+     * @requires words is sorted and mode is BY_LETTER or a positive number
+     * @ensures sink has index.html linking to a page for each shard
+     */
+    public static List<String> write(String[] words, PageSink sink,
+            String mode) throws IOException {
+        return write(words, sink, mode, null);
+    }
+
+    /**
+     * Writes the top-level index and its shards to sink, for words sorted in
+     * the order of a language; with {@link #BY_LETTER}, the words whose first
+     * letters are the same letter for letters (such as "e" and "\u00c9" at
+     * primary strength) share a shard.
+     *
+     * @param words
+     *            the words, sorted
+     * @param sink
+     *            where the pages are written
+     * @param mode
+     *            {@link #BY_LETTER}, or the number of words per shard
+     * @param letters
+     *            tells whether two letters are the same, or null to compare
+     *            them exactly
+     * @return the file names of the shards
+     * @throws IOException
+     *             if a page cannot be written
+     * @requires words is sorted in the order letters comes from and mode is
+     *           BY_LETTER or a positive number
+     * @ensures sink has index.html linking to a page for each shard
+     */
+    public static List<String> write(String[] words, PageSink sink,
+            String mode, Collator letters) throws IOException {
+        // the runs of words of each shard, as [from, to) pairs
+        List<List<Integer>> runs = new ArrayList<>();
+        List<Integer> keys = new ArrayList<>(); //leading character of each
+        List<String> files = new ArrayList<>();
+        List<String> firsts = new ArrayList<>();
+        List<String> lasts = new ArrayList<>();
+        if (mode.equals(BY_LETTER)) {
+            int i = 0;
+            while (i < words.length) {
+                int c = words[i].isEmpty() ? 0 : words[i].codePointAt(0);
+                int from = i;
+                i++;
+                while (i < words.length && !words[i].isEmpty()
+                        && sameLetter(c, words[i].codePointAt(0), letters)) {
+                    i++;
+                }
+                // a letter seen before gets the run, keeping its file name
+                int k = 0;
+                while (k < keys.size()
+                        && !sameLetter(keys.get(k), c, letters)) {
+                    k++;
+                }
+                if (k == keys.size()) {
+                    runs.add(new ArrayList<>());
+                    keys.add(c);
+                    files.add(letterFile(c));
+                    firsts.add(new String(Character.toChars(c)));
+                    lasts.add(null);
+                }
+                runs.get(k).add(from);
+                runs.get(k).add(i);
+            }
+        } else {
+            int size = Integer.parseInt(mode);
+            assert size > 0 : "Violation of: mode is a positive number";
+            for (int i = 0; i < words.length; i += size) {
+                int to = Math.min(i + size, words.length);
+                runs.add(List.of(i, to));
+                files.add("index-" + (i / size + 1) + ".html");
+                firsts.add(words[i]);
+                lasts.add(words[to - 1]);
+            }
+        }
+
+        sink.write("index.html", top(files, firsts, lasts));
+        try {
+            IntStream.range(0, files.size()).parallel().forEach(k -> {
+                HtmlBuffer page = new HtmlBuffer();
+                shard(page, words, runs.get(k), firsts.get(k),
+                        lasts.get(k));
+                try {
+                    sink.write(files.get(k), page);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return files;
+    }
+
+    /**
+     * Deletes from folder the shards, and their gzip copies, that are not in
+     * keep, such as those of an earlier run with another mode.
+     *
+     * @param folder
+     *            the output folder
+     * @param keep
+     *            the file names of the shards and pages to keep
+     * @throws IOException
+     *             if the folder cannot be listed or a file deleted
+     */
+    public static void removeStale(Path folder, Collection<String> keep)
+            throws IOException {
+        if (Files.isDirectory(folder)) {
+            List<Path> stale = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(folder)) {
+                for (Path p : ds) {
+                    String name = p.getFileName().toString();
+                    String page = name.endsWith(".gz")
+                            ? name.substring(0, name.length() - ".gz".length())
+                            : name;
+                    if (SHARD_FILE.matcher(name).matches()
+                            && !keep.contains(page)) {
+                        stale.add(p);
+                    }
+                }
+            }
+            for (Path p : stale) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Appends the label of shard k.
+     *
+     * @param out
+     *            the buffer
+     * @param first
+     *            the first word or the leading character of the shard
+     * @param last
+     *            the last word of the shard, or null when sharded by letter
+     */
+    private static void label(HtmlBuffer out, String first, String last) {
+        out.escaped(first);
+        if (last != null) {
+            out.raw(" &ndash; ").escaped(last);
+        }
+    }
+
+    /**
+     * Returns the top-level index page.
+     *
+     * @param files
+     *            the file name of each shard
+     * @param firsts
+     *            the first word or leading character of each shard
+     * @param lasts
+     *            the last word of each shard, or nulls
+     * @return the bytes of index.html
+     */
+    private static byte[] top(List<String> files, List<String> firsts,
+            List<String> lasts) {
+        HtmlBuffer page = new HtmlBuffer();
+        TOP.fragment(page, 0);
+        for (int k = 0; k < files.size(); k++) {
+            LINK.fragment(page, 0);
+            page.escaped(files.get(k));
+            LINK.fragment(page, 1);
+            label(page, firsts.get(k), lasts.get(k));
+            LINK.fragment(page, 2);
+        }
+        TOP.fragment(page, 1);
+        return page.toByteArray();
+    }
+
+    /**
+     * Renders the page of one shard into page.
+     *
+     * @param page
+     *            the buffer receiving the page
+     * @param words
+     *            the words, sorted
+     * @param runs
+     *            the runs of words of the shard, as pairs of the index of the
+     *            first word and the index just past the last one
+     * @param first
+     *            the first word or the leading character of the shard
+     * @param last
+     *            the last word of the shard, or null
+     */
+    private static void shard(HtmlBuffer page, String[] words,
+            List<Integer> runs, String first, String last) {
+        SHARD.fragment(page, 0);
+        label(page, first, last);
+        SHARD.fragment(page, 1);
+        for (int r = 0; r < runs.size(); r += 2) {
+            for (int i = runs.get(r); i < runs.get(r + 1); i++) {
+                LINK.fragment(page, 0);
+                page.escaped(words[i]).raw(".html");
+                LINK.fragment(page, 1);
+                page.escaped(words[i]);
+                LINK.fragment(page, 2);
+            }
+        }
+        SHARD.fragment(page, 2);
+    }
+
+}
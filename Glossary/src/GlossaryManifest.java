@@ -0,0 +1,332 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.function.Function;
+
+import components.queue.Queue;
+
+/**
+ * Remembers, for every page of a generated glossary, a hash of the word's
+ * description and a hash of the links made in it, so that the next run only
+ * re-renders the pages whose text or linked neighbours changed.
+ *
+ * <p>
+ * The manifest is stored in the output folder as {@link #FILE_NAME}: a first
+ * line {@code #} followed by the options that shape the pages, then one line
+ * per word: the description hash, the link hash (both in hexadecimal) and the
+ * word, separated by single spaces. Pages written with other options are all
+ * out of date, whatever their hashes.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryManifest {
+
+    /**
+     * Name of the manifest file in the output folder.
+     */
+    public static final String FILE_NAME = ".glossary-manifest";
+
+    /**
+     * Offset basis of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    /**
+     * Prime of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Hashes of each word: index 0 is the description hash and index 1 is
+     * the link hash.
+     */
+    private final HashMap<String, long[]> hashes;
+
+    /**
+     * The options that shaped the pages.
+     */
+    private String options;
+
+    /**
+     * Constructor of an empty manifest.
+     */
+    private GlossaryManifest() {
+        this.hashes = new HashMap<>();
+        this.options = "";
+    }
+
+    /**
+     * Records the options that shape the pages.
+     *
+     * @param fingerprint
+     *            the options, on one line
+     */
+    public void options(String fingerprint) {
+        assert fingerprint.indexOf('\n') < 0 : "Violation of: one line";
+
+        this.options = fingerprint;
+    }
+
+    /**
+     * Reports whether the pages of this manifest and of old were shaped by
+     * the same options.
+     *
+     * @param old
+     *            the manifest of the previous run
+     * @return true if the options did not change
+     */
+    public boolean sameOptions(GlossaryManifest old) {
+        return this.options.equals(old.options);
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the characters of s.
+     *
+     * @param h
+     *            the hash so far
+     * @param s
+     *            the characters to add
+     * @return the hash of h followed by s
+     */
+    private static long hash(long h, CharSequence s) {
+        long r = h;
+        for (int i = 0; i < s.length(); i++) {
+            r = (r ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return r;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of v.
+     *
+     * @param h
+     *            the hash so far
+     * @param v
+     *            the value to add
+     * @return the hash of h followed by v
+     */
+    private static long hash(long h, int v) {
+        return ((h ^ v) * FNV_PRIME ^ (v >>> 16)) * FNV_PRIME;
+    }
+
+    /**
+     * Returns the manifest of the glossary as it is now.
+     *
+     * @param q
+     *            queue which store the words
+     * @param des
+     *            gives the description of each word
+     * @param linker
+     *            linker built from every word of the glossary
+     * @return the manifest of every word of q
+     * @requires the descriptions are not linked yet
+     */
+    public static GlossaryManifest of(Queue<String> q,
+            Function<String, String> des, TermLinker linker) {
+        return of(q, des, linker, null);
+    }
+
+    /**
+     * Returns the manifest of the glossary as it is now, taking the links of
+     * each description from graph instead of scanning it.
+     *
+     * @param q
+     *            queue which store the words
+     * @param des
+     *            gives the description of each word
+     * @param linker
+     *            linker built from every word of the glossary
+     * @param graph
+     *            the links of every description, or null to scan them
+     * @return the manifest of every word of q
+     * @requires the descriptions are not linked yet
+     */
+    public static GlossaryManifest of(Queue<String> q,
+            Function<String, String> des, TermLinker linker,
+            LinkGraph graph) {
+        GlossaryManifest manifest = new GlossaryManifest();
+        for (String word : q) {
+            manifest.put(word, des.apply(word), linker, graph);
+        }
+        return manifest;
+    }
+
+    /**
+     * Records the hashes of one word.
+     *
+     * @param word
+     *            the name of word
+     * @param des
+     *            the description of word, not linked yet
+     * @param linker
+     *            linker built from every word of the glossary
+     */
+    public void put(String word, String des, TermLinker linker) {
+        this.put(word, des, linker, null);
+    }
+
+    /**
+     * Records the hashes of one word, taking its links from graph.
+     *
+     * @param word
+     *            the name of word
+     * @param des
+     *            the description of word, not linked yet
+     * @param linker
+     *            linker built from every word of the glossary
+     * @param graph
+     *            the links of every description, or null to scan des
+     */
+    public void put(String word, String des, TermLinker linker,
+            LinkGraph graph) {
+        final long[] link = { FNV_BASIS };
+        TermLinker.LinkListener hashLink = (start, end, target) -> {
+            link[0] = hash(hash(link[0], start), linker.term(target));
+        };
+        if (graph == null) {
+            linker.links(des, hashLink);
+        } else {
+            graph.links(linker.ordinal(word), hashLink);
+        }
+        this.hashes.put(word, new long[] { hash(FNV_BASIS, des), link[0] });
+    }
+
+    /**
+     * Forgets one word.
+     *
+     * @param word
+     *            the name of word
+     */
+    public void remove(String word) {
+        this.hashes.remove(word);
+    }
+
+    /**
+     * Reads the manifest of folder.
+     *
+     * @param folder
+     *            the output folder
+     * @return the manifest saved in folder, empty if there is none
+     * @throws IOException
+     *             if the manifest cannot be read
+     */
+    public static GlossaryManifest load(Path folder) throws IOException {
+        GlossaryManifest manifest = new GlossaryManifest();
+        Path file = folder.resolve(FILE_NAME);
+        if (Files.exists(file)) {
+            try (BufferedReader r = Files.newBufferedReader(file,
+                    StandardCharsets.UTF_8)) {
+                String line = r.readLine();
+                if (line != null && line.startsWith("#")) {
+                    manifest.options = line.substring(1);
+                    line = r.readLine();
+                }
+                while (line != null) {
+                    int a = line.indexOf(' ');
+                    int b = line.indexOf(' ', a + 1);
+                    if (a > 0 && b > a) {
+                        long des = Long.parseUnsignedLong(line.substring(0, a),
+                                16);
+                        long link = Long.parseUnsignedLong(
+                                line.substring(a + 1, b), 16);
+                        manifest.hashes.put(line.substring(b + 1),
+                                new long[] { des, link });
+                    }
+                    line = r.readLine();
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes this manifest into folder.
+     *
+     * @param folder
+     *            the output folder
+     * @throws IOException
+     *             if the manifest cannot be written
+     */
+    public void save(Path folder) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(
+                folder.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+            w.write('#');
+            w.write(this.options);
+            w.newLine();
+            for (Entry<String, long[]> e : this.hashes.entrySet()) {
+                w.write(Long.toHexString(e.getValue()[0]));
+                w.write(' ');
+                w.write(Long.toHexString(e.getValue()[1]));
+                w.write(' ');
+                w.write(e.getKey());
+                w.newLine();
+            }
+        }
+    }
+
+    /**
+     * Reports whether this manifest has the same words as old.
+     *
+     * @param old
+     *            the manifest of the previous run
+     * @return true if the set of words did not change
+     */
+    public boolean sameWords(GlossaryManifest old) {
+        return this.hashes.keySet().equals(old.hashes.keySet());
+    }
+
+    /**
+     * Returns the words of q whose page must be written again: those whose
+     * description or links changed since old, and those without a page in
+     * folder.
+     *
+     * @param q
+     *            queue which store the words in lexicographic order
+     * @param old
+     *            the manifest of the previous run
+     * @param folder
+     *            the output folder
+     * @return the words of q to render again, in the order of q
+     */
+    public Queue<String> changedSince(Queue<String> q, GlossaryManifest old,
+            Path folder) {
+        Queue<String> changed = q.newInstance();
+        for (String word : q) {
+            long[] now = this.hashes.get(word);
+            long[] before = old.hashes.get(word);
+            if (before == null || before[0] != now[0] || before[1] != now[1]
+                    || !Files.exists(folder.resolve(word + ".html"))) {
+                changed.enqueue(word);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Deletes from folder the pages of the words of old that are gone, and
+     * their gzip copies.
+     *
+     * @param old
+     *            the manifest of the previous run
+     * @param folder
+     *            the output folder
+     * @throws IOException
+     *             if a page cannot be deleted
+     */
+    public void removeStale(GlossaryManifest old, Path folder)
+            throws IOException {
+        for (String word : old.hashes.keySet()) {
+            if (!this.hashes.containsKey(word)) {
+                Files.deleteIfExists(folder.resolve(word + ".html"));
+                Files.deleteIfExists(folder.resolve(word + ".html.gz"));
+            }
+        }
+    }
+
+}
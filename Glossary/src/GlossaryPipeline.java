@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import components.queue.Queue;
+
+/**
+ * Writes the word pages of a glossary with three stages joined by bounded
+ * queues: a feeder hands out the parsed words in order, a pool of workers
+ * links and renders the pages, and a single writer hands them to a
+ * {@code PageSink}.
+ *
+ * <p>
+ * Linking needs every term of the glossary, so the feeder starts once
+ * {@code Glossary.readWord} has parsed the whole input. The pages are
+ * rendered with {@code Glossary.renderPage}, so they are byte-identical to
+ * the ones the sequential loop of {@code Glossary.build} writes, and the
+ * writer puts them back in the order of the words before handing them to
+ * the sink, so a sink that keeps the order, such as {@code ArchiveSink},
+ * gets the same file as from the sequential loop. The feeder stays at most
+ * {@link #WINDOW} words ahead of the writer, which bounds the pages waiting
+ * for an earlier one.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryPipeline {
+
+    /**
+     * Capacity of each hand-off queue.
+     */
+    private static final int CAPACITY = 1024;
+
+    /**
+     * Most words between the oldest page not yet written and the newest word
+     * handed out.
+     */
+    private static final int WINDOW = 2 * CAPACITY;
+
+    /**
+     * Waits for the next stage to finish.
+     */
+    private static final class Stage implements ForkJoinPool.ManagedBlocker {
+
+        /**
+         * The stages.
+         */
+        private final CompletionService<Void> stages;
+
+        /**
+         * The stage that finished, or null.
+         */
+        private Future<Void> stage;
+
+        /**
+         * Constructor.
+         *
+         * @param stages
+         *            the stages
+         */
+        Stage(CompletionService<Void> stages) {
+            this.stages = stages;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (this.stage == null) {
+                this.stage = this.stages.take();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (this.stage == null) {
+                this.stage = this.stages.poll();
+            }
+            return this.stage != null;
+        }
+    }
+
+    /**
+     * A word and its description, or a page and its bytes.
+     */
+    private static final class Item {
+
+        /**
+         * Position of word in the queue.
+         */
+        private final int ordinal;
+
+        /**
+         * The name of word.
+         */
+        private final String word;
+
+        /**
+         * The description of word, when handed to a worker.
+         */
+        private final String des;
+
+        /**
+         * The rendered page, when handed to the writer.
+         */
+        private final byte[] page;
+
+        /**
+         * Constructor.
+         *
+         * @param ordinal
+         *            position of word in the queue
+         * @param word
+         *            the name of word
+         * @param des
+         *            the description of word
+         * @param page
+         *            the rendered page
+         */
+        Item(int ordinal, String word, String des, byte[] page) {
+            this.ordinal = ordinal;
+            this.word = word;
+            this.des = des;
+            this.page = page;
+        }
+    }
+
+    /**
+     * Marks the end of a queue.
+     */
+    private static final Item END = new Item(-1, null, null, null);
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private GlossaryPipeline() {
+    }
+
+    /**
+     * Writes the page of every word of q into folder.
+     *
+     * @param q
+     *            queue which store the words in lexicographic order
+     * @param des
+     *            gives the description of each word
+     * @param linker
+     *            linker built from every word of the glossary
+     * @param graph
+     *            the links of every description, or null to link them while
+     *            rendering
+     * @param related
+     *            the related words of every word, or null
+     * @param sink
+     *            where the pages are written
+     * @param threads
+     *            the number of workers, or 0 for one per core
+     * @throws IOException
+     *             if a page cannot be written
+     * @requires q is not touched until generate returns
+     * @ensures sink has the page of every word of q
+     */
+    public static void generate(Queue<String> q,
+            Function<String, String> des, TermLinker linker, LinkGraph graph,
+            RelatedTerms related, PageSink sink, int threads)
+            throws IOException {
+        assert threads >= 0 : "Violation of: threads >= 0";
+
+        final int workers = threads > 0 ? threads
+                : Runtime.getRuntime().availableProcessors();
+        final BlockingQueue<Item> words = new ArrayBlockingQueue<>(CAPACITY);
+        final BlockingQueue<Item> pages = new ArrayBlockingQueue<>(CAPACITY);
+        // one permit per word handed out and not yet written
+        final Semaphore window = new Semaphore(WINDOW);
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers + 2);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(
+                pool);
+        stages.submit(() -> {
+            int ordinal = 0;
+            for (String word : q) {
+                window.acquire();
+                words.put(new Item(ordinal, word, des.apply(word), null));
+                ordinal++;
+            }
+            for (int i = 0; i < workers; i++) {
+                words.put(END);
+            }
+            return null;
+        });
+        for (int i = 0; i < workers; i++) {
+            stages.submit(() -> {
+                HtmlBuffer page = new HtmlBuffer();
+                Item x = words.take();
+                while (x != END) {
+                    page.clear();
+                    Glossary.renderPage(page, x.word, x.des, linker, graph,
+                            related);
+                    pages.put(new Item(x.ordinal, x.word, null,
+                            page.toByteArray()));
+                    x = words.take();
+                }
+                pages.put(END);
+                return null;
+            });
+        }
+        stages.submit(() -> {
+            // pages wait here until those before them in q are written
+            Item[] waiting = new Item[WINDOW];
+            int next = 0;
+            int running = workers;
+            while (running > 0) {
+                Item x = pages.take();
+                if (x == END) {
+                    running--;
+                } else {
+                    waiting[x.ordinal % WINDOW] = x;
+                    while (waiting[next % WINDOW] != null) {
+                        Item y = waiting[next % WINDOW];
+                        waiting[next % WINDOW] = null;
+                        sink.write(y.word + ".html", y.page);
+                        window.release();
+                        next++;
+                    }
+                }
+            }
+            return null;
+        });
+
+        try {
+            for (int i = 0; i < workers + 2; i++) {
+                Stage done = new Stage(stages);
+                // a batch job runs on a ForkJoinPool, which may then add a
+                // thread while this one waits
+                ForkJoinPool.managedBlock(done);
+                done.stage.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing pages", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error rendering pages", cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+}
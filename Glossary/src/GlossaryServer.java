@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import components.queue.Queue;
+
+/**
+ * Serves a glossary from an embedded HTTP server instead of writing every
+ * page to disk.
+ *
+ * <p>
+ * {@code /} and {@code /index.html} serve the index, {@code /<word>.html}
+ * serves the page of a word. Pages are rendered on first request and kept
+ * in an LRU cache bounded by its total size in bytes. Every response
+ * carries an ETag, and a request whose {@code If-None-Match} matches gets
+ * {@code 304 Not Modified}. Requests are handled on virtual threads when
+ * the JDK has them, and on a cached thread pool otherwise. The server
+ * listens on the loopback address unless told otherwise, so it is only
+ * reachable from the local machine.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryServer {
+
+    /**
+     * A rendered page and its entity tag.
+     */
+    private static final class Page {
+
+        /**
+         * The bytes of the page.
+         */
+        private final byte[] bytes;
+
+        /**
+         * The quoted entity tag of the page.
+         */
+        private final String etag;
+
+        /**
+         * Constructor.
+         *
+         * @param bytes
+         *            the bytes of the page
+         */
+        Page(byte[] bytes) {
+            this.bytes = bytes;
+            long h = 0xcbf29ce484222325L;
+            for (byte b : bytes) {
+                h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            this.etag = "\"" + Long.toHexString(h) + "\"";
+        }
+    }
+
+    /**
+     * Gives the description of each word.
+     */
+    private final Function<String, String> des;
+
+    /**
+     * Linker built from every word.
+     */
+    private final TermLinker linker;
+
+    /**
+     * The index page.
+     */
+    private final Page index;
+
+    /**
+     * Rendered pages, least recently used first.
+     */
+    private final LinkedHashMap<String, Page> cache;
+
+    /**
+     * Upper bound of the total size of the cached pages.
+     */
+    private final long capacity;
+
+    /**
+     * Total size of the cached pages.
+     */
+    private long cached;
+
+    /**
+     * The running server, or null.
+     */
+    private HttpServer server;
+
+    /**
+     * The executor of the running server, or null.
+     */
+    private ExecutorService pool;
+
+    /**
+     * Constructor.
+     *
+     * @param q
+     *            queue which store the words in the order of the index
+     * @param des
+     *            gives the description of each word
+     * @param linker
+     *            linker built from every word
+     * @param capacity
+     *            upper bound of the total size of the cached pages, in bytes
+     */
+    public GlossaryServer(Queue<String> q, Function<String, String> des,
+            TermLinker linker, long capacity) {
+        this.des = des;
+        this.linker = linker;
+        this.capacity = capacity;
+        final int initial = 16;
+        final float load = 0.75f;
+        this.cache = new LinkedHashMap<>(initial, load, true);
+        HtmlBuffer page = new HtmlBuffer();
+        Glossary.renderIndex(page, q);
+        this.index = new Page(page.toByteArray());
+    }
+
+    /**
+     * Returns the page of word, rendering it if it is not cached.
+     *
+     * @param word
+     *            the name of word
+     * @return the page, or null if word is not in the glossary
+     */
+    private Page page(String word) {
+        Page p;
+        synchronized (this.cache) {
+            p = this.cache.get(word);
+        }
+        if (p == null && this.linker.ordinal(word) >= 0) {
+            HtmlBuffer out = new HtmlBuffer();
+            Glossary.renderPage(out, word, this.des.apply(word), this.linker);
+            p = new Page(out.toByteArray());
+            synchronized (this.cache) {
+                if (this.cache.put(word, p) == null) {
+                    this.cached += p.bytes.length;
+                }
+                Iterator<Page> it = this.cache.values().iterator();
+                while (this.cached > this.capacity && it.hasNext()) {
+                    this.cached -= it.next().bytes.length;
+                    it.remove();
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Returns the total size of the cached pages.
+     *
+     * @return the size in bytes, at most the capacity
+     */
+    long cachedBytes() {
+        synchronized (this.cache) {
+            return this.cached;
+        }
+    }
+
+    /**
+     * Answers one request.
+     *
+     * @param ex
+     *            the exchange
+     * @throws IOException
+     *             if the response cannot be sent
+     */
+    private void handle(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+        String method = ex.getRequestMethod();
+        Page p = null;
+        if (method.equals("GET") || method.equals("HEAD")) {
+            if (path.equals("/") || path.equals("/index.html")) {
+                p = this.index;
+            } else if (path.startsWith("/") && path.endsWith(".html")) {
+                p = this.page(path.substring(1,
+                        path.length() - ".html".length()));
+            }
+        }
+
+        if (p == null) {
+            ex.sendResponseHeaders(404, -1);
+        } else {
+            Headers h = ex.getResponseHeaders();
+            h.put("ETag", List.of(p.etag));
+            h.put("Content-Type", List.of("text/html; charset=utf-8"));
+            String match = ex.getRequestHeaders().getFirst("If-None-Match");
+            if (p.etag.equals(match)) {
+                ex.sendResponseHeaders(304, -1);
+            } else if (method.equals("HEAD")) {
+                ex.sendResponseHeaders(200, -1);
+            } else {
+                ex.sendResponseHeaders(200, p.bytes.length);
+                try (OutputStream body = ex.getResponseBody()) {
+                    body.write(p.bytes);
+                }
+            }
+        }
+        ex.close();
+    }
+
+    /**
+     * Returns an executor running each task on a new virtual thread, or a
+     * cached thread pool when the JDK has no virtual threads.
+     *
+     * @return the executor for the request handlers
+     */
+    private static ExecutorService handlers() {
+        ExecutorService pool;
+        try {
+            pool = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // no virtual threads, or only as a preview
+            pool = Executors.newCachedThreadPool();
+        }
+        return pool;
+    }
+
+    /**
+     * Starts serving on the given port of the loopback address.
+     *
+     * @param port
+     *            the port, or 0 for any free port
+     * @return the port the server listens on
+     * @throws IOException
+     *             if the server cannot be started
+     */
+    public int start(int port) throws IOException {
+        return this.start(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Starts serving on the given port of address.
+     *
+     * @param address
+     *            the local address to listen on
+     * @param port
+     *            the port, or 0 for any free port
+     * @return the port the server listens on
+     * @throws IOException
+     *             if the server cannot be started
+     */
+    public int start(InetAddress address, int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(address, port),
+                0);
+        this.server.createContext("/", this::handle);
+        this.pool = handlers();
+        this.server.setExecutor(this.pool);
+        this.server.start();
+        return this.server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.pool.shutdown();
+            this.server = null;
+            this.pool = null;
+        }
+    }
+
+}
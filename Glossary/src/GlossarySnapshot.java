@@ -0,0 +1,456 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A glossary as parsed, sorted and linked by an earlier run, saved in a
+ * binary file that the next run maps instead of doing that work again.
+ *
+ * <p>
+ * The file holds, big-endian: the magic number {@code GLSS}, the
+ * {@link #VERSION} of the format, the size and the 64-bit FNV-1a hash of the
+ * bytes of the input file it was made from (hashed from the mapping they
+ * were parsed from), the number of words n and of links m, the language tag
+ * of the order of the words (empty for {@code String.compareTo}), then the
+ * byte offsets of each word and of each description (n + 1 ints each), the
+ * link spans of {@code LinkGraph} (n + 1 ints, then m starts, m ends and m
+ * targets), and finally the words and the descriptions in UTF-8, back to
+ * back, in the order of the index. A snapshot
+ * is only used when the input file still has the size and hash it records,
+ * whatever its last-modified time, and the words are wanted in the same
+ * order; otherwise it is rebuilt. Hashing the input reads it once, which is
+ * far cheaper than parsing, sorting and linking it.
+ *
+ * <p>
+ * Loading decodes the words and copies the link spans, which are small; the
+ * descriptions stay in the mapping until a page asks for one. A snapshot is
+ * at most 2 GiB, the size of one mapping.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossarySnapshot {
+
+    /**
+     * Version of the file format, bumped whenever it changes.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * First four bytes of a snapshot, "GLSS".
+     */
+    private static final int MAGIC = 0x474C5353;
+
+    /**
+     * Offset basis of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    /**
+     * Prime of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Bytes read from the input at a time when hashing it.
+     */
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * Bytes of the header before the language tag.
+     */
+    private static final int HEADER = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    /**
+     * The mapped file.
+     */
+    private final MappedByteBuffer map;
+
+    /**
+     * The words in the order of the index; a word's ordinal is its index.
+     */
+    private final String[] words;
+
+    /**
+     * Description of word i is map[defs[i], defs[i + 1]).
+     */
+    private final int[] defs;
+
+    /**
+     * The links of every description.
+     */
+    private final LinkGraph graph;
+
+    /**
+     * Constructor.
+     *
+     * @param map
+     *            the mapped file
+     * @param words
+     *            the words in the order of the index
+     * @param defs
+     *            absolute byte offsets of the descriptions, and their end
+     * @param graph
+     *            the links of every description
+     */
+    private GlossarySnapshot(MappedByteBuffer map, String[] words, int[] defs,
+            LinkGraph graph) {
+        this.map = map;
+        this.words = words;
+        this.defs = defs;
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the language tag of the order of the words.
+     *
+     * @param locale
+     *            the language tag, or null for {@code String.compareTo}
+     * @return the bytes of the tag, empty for null
+     */
+    private static byte[] tag(String locale) {
+        return (locale == null ? "" : locale)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash h continued over the remaining bytes of
+     * b.
+     *
+     * @param h
+     *            the hash so far
+     * @param b
+     *            the bytes
+     * @return the hash
+     * @updates b
+     * @ensures b has no bytes remaining
+     */
+    private static long hash(long h, ByteBuffer b) {
+        long r = h;
+        while (b.hasRemaining()) {
+            r = (r ^ (b.get() & 0xFF)) * FNV_PRIME;
+        }
+        return r;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the bytes of a file.
+     *
+     * @param file
+     *            the file
+     * @return the hash
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static long hash(Path file) throws IOException {
+        long h = FNV_BASIS;
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                h = hash(h, buf);
+                buf.clear();
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the bytes source was parsed from.
+     *
+     * @param source
+     *            the mapped input file
+     * @return the hash
+     */
+    private static long hash(MappedTerms source) {
+        long h = FNV_BASIS;
+        for (ByteBuffer b : source.bytes()) {
+            h = hash(h, b);
+        }
+        return h;
+    }
+
+    /**
+     * Returns count ints of b starting at position p.
+     *
+     * @param b
+     *            the buffer
+     * @param p
+     *            the position
+     * @param count
+     *            the number of ints
+     * @return the ints
+     */
+    private static int[] ints(ByteBuffer b, int p, int count) {
+        int[] values = new int[count];
+        ByteBuffer d = b.duplicate();
+        d.position(p);
+        d.asIntBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Maps the snapshot made from source, if it is still up to date.
+     *
+     * @param snapshot
+     *            the snapshot file
+     * @param source
+     *            the glossary input file
+     * @param locale
+     *            the language tag of the order of the words, or null for
+     *            {@code String.compareTo}
+     * @return the snapshot, or null if there is none, it is of another
+     *         version, or source or the order changed since it was written
+     * @throws IOException
+     *             if the files cannot be read
+     */
+    public static GlossarySnapshot load(Path snapshot, Path source,
+            String locale) throws IOException {
+        GlossarySnapshot r = null;
+        if (Files.exists(snapshot)) {
+            MappedByteBuffer map;
+            try (FileChannel ch = FileChannel.open(snapshot,
+                    StandardOpenOption.READ)) {
+                long size = ch.size();
+                map = size >= HEADER && size <= Integer.MAX_VALUE
+                        ? ch.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                        : null;
+            }
+            byte[] tag = tag(locale);
+            if (map != null && map.getInt(0) == MAGIC
+                    && map.getInt(4) == VERSION
+                    && map.getLong(8) == Files.size(source)
+                    && map.getInt(32) == tag.length
+                    && HEADER + tag.length <= map.limit()) {
+                byte[] saved = new byte[tag.length];
+                ByteBuffer d = map.duplicate();
+                d.position(HEADER);
+                d.get(saved);
+                // the hash last: it reads the whole input
+                if (Arrays.equals(saved, tag)
+                        && map.getLong(16) == hash(source)) {
+                    r = read(map, HEADER + tag.length);
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Reads the tables of a snapshot whose header was checked.
+     *
+     * @param map
+     *            the mapped file
+     * @param p
+     *            position just past the header
+     * @return the snapshot, or null if the file is truncated
+     */
+    private static GlossarySnapshot read(MappedByteBuffer map, int p) {
+        int n = map.getInt(24);
+        int m = map.getInt(28);
+        long tables = 4L * (3L * (n + 1) + 3L * m);
+        GlossarySnapshot r = null;
+        if (n >= 0 && m >= 0 && p + tables <= map.limit()) {
+            int at = p;
+            int[] words = ints(map, at, n + 1);
+            at += 4 * (n + 1);
+            int[] defs = ints(map, at, n + 1);
+            at += 4 * (n + 1);
+            int[] spans = ints(map, at, n + 1);
+            at += 4 * (n + 1);
+            int[] starts = ints(map, at, m);
+            at += 4 * m;
+            int[] ends = ints(map, at, m);
+            at += 4 * m;
+            int[] targets = ints(map, at, m);
+            at += 4 * m;
+            int wordBase = at;
+            int defBase = wordBase + words[n];
+            if (defBase + (long) defs[n] == map.limit()) {
+                byte[] blob = new byte[words[n]];
+                ByteBuffer d = map.duplicate();
+                d.position(wordBase);
+                d.get(blob);
+                String[] w = new String[n];
+                for (int i = 0; i < n; i++) {
+                    w[i] = new String(blob, words[i], words[i + 1] - words[i],
+                            StandardCharsets.UTF_8);
+                }
+                for (int i = 0; i <= n; i++) {
+                    defs[i] += defBase;
+                }
+                r = new GlossarySnapshot(map, w, defs,
+                        LinkGraph.of(w, spans, starts, ends, targets));
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Writes the snapshot of a glossary made from source. The file is
+     * written beside snapshot and then moved over it, so a reader never sees
+     * half a snapshot. The size and hash it records are those of the mapped
+     * bytes of source, not of the file as it is now, so a file edited since
+     * it was parsed does not match the snapshot.
+     *
+     * @param snapshot
+     *            the snapshot file
+     * @param source
+     *            the glossary input file, as it was parsed
+     * @param locale
+     *            the language tag of the order of words, or null for
+     *            {@code String.compareTo}
+     * @param words
+     *            the words in the order of the index
+     * @param des
+     *            gives the description of each word
+     * @param graph
+     *            the links of every description, with the ordinals of words
+     * @throws IOException
+     *             if the snapshot cannot be written, or would be over 2 GiB
+     */
+    public static void write(Path snapshot, MappedTerms source,
+            String locale, String[] words, Function<String, String> des,
+            LinkGraph graph) throws IOException {
+        assert graph.size() == words.length : ""
+                + "Violation of: graph has the ordinals of words";
+
+        int n = words.length;
+        byte[][] w = new byte[n][];
+        byte[][] d = new byte[n][];
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            w[i] = words[i].getBytes(StandardCharsets.UTF_8);
+            d[i] = des.apply(words[i]).getBytes(StandardCharsets.UTF_8);
+            total += w[i].length + d[i].length;
+        }
+        int m = graph.linkCount();
+        byte[] tag = tag(locale);
+        total += HEADER + tag.length + 4L * (3L * (n + 1) + 3L * m);
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Glossary too large for a snapshot: "
+                    + total + " bytes");
+        }
+
+        Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.fileSize());
+            out.writeLong(hash(source));
+            out.writeInt(n);
+            out.writeInt(m);
+            out.writeInt(tag.length);
+            out.write(tag);
+            int at = 0;
+            for (int i = 0; i < n; i++) {
+                out.writeInt(at);
+                at += w[i].length;
+            }
+            out.writeInt(at);
+            at = 0;
+            for (int i = 0; i < n; i++) {
+                out.writeInt(at);
+                at += d[i].length;
+            }
+            out.writeInt(at);
+            // spans, then the starts, ends and targets of every link
+            int[] spans = new int[n + 1];
+            int[] links = new int[3 * m];
+            for (int s = 0; s < n; s++) {
+                final int[] p = { spans[s] };
+                graph.links(s, (start, end, target) -> {
+                    links[p[0]] = start;
+                    links[m + p[0]] = end;
+                    links[2 * m + p[0]] = target;
+                    p[0]++;
+                });
+                spans[s + 1] = p[0];
+            }
+            for (int x : spans) {
+                out.writeInt(x);
+            }
+            for (int x : links) {
+                out.writeInt(x);
+            }
+            for (byte[] b : w) {
+                out.write(b);
+            }
+            for (byte[] b : d) {
+                out.write(b);
+            }
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return this.words.length;
+    }
+
+    /**
+     * Returns the word with the given ordinal.
+     *
+     * @param ordinal
+     *            the ordinal
+     * @return the word
+     * @requires 0 <= ordinal < size()
+     */
+    public String word(int ordinal) {
+        return this.words[ordinal];
+    }
+
+    /**
+     * Returns the words in the order of the index.
+     *
+     * @return a new array with every word
+     */
+    public String[] words() {
+        return this.words.clone();
+    }
+
+    /**
+     * Returns the description of the word with the given ordinal, decoded
+     * from the mapping.
+     *
+     * @param ordinal
+     *            the ordinal
+     * @return the description
+     * @requires 0 <= ordinal < size()
+     */
+    public String definition(int ordinal) {
+        byte[] b = new byte[this.defs[ordinal + 1] - this.defs[ordinal]];
+        ByteBuffer d = this.map.duplicate();
+        d.position(this.defs[ordinal]);
+        d.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the links of every description, as they were when the
+     * snapshot was written.
+     *
+     * @return the graph, with the ordinals of words()
+     */
+    public LinkGraph graph() {
+        return this.graph;
+    }
+
+}
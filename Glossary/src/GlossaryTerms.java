@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The words and descriptions of a glossary, stored by term ordinal.
+ *
+ * <p>
+ * The words are kept in lexicographic order in one array, so the ordinal of
+ * a word is its position in that order, and the descriptions in a parallel
+ * array. An open-addressing table maps each word to its ordinal, so looking
+ * up a description costs one hash and usually one comparison, with no
+ * boxing. The file is parsed by {@code MappedTerms} (exactly like
+ * {@code Glossary.readWord}) and the descriptions are decoded in parallel.
+ * When a word appears twice, its last description wins.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryTerms {
+
+    /**
+     * The words in lexicographic order; a word's ordinal is its index.
+     */
+    private final String[] words;
+
+    /**
+     * The description of each word, by ordinal.
+     */
+    private final String[] definitions;
+
+    /**
+     * Open-addressing table: ordinal + 1 of the word hashed there, or 0.
+     */
+    private final int[] slots;
+
+    /**
+     * Shift keeping the high bits of a mixed hash code as a slot.
+     */
+    private final int shift;
+
+    /**
+     * Constructor.
+     *
+     * @param words
+     *            the words in lexicographic order, without duplicates
+     * @param definitions
+     *            the description of each word
+     */
+    private GlossaryTerms(String[] words, String[] definitions) {
+        this.words = words;
+        this.definitions = definitions;
+        int capacity = Integer.highestOneBit(Math.max(words.length, 4) * 2)
+                * 2;
+        this.slots = new int[capacity];
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+        for (int i = 0; i < words.length; i++) {
+            this.slots[this.slot(words[i])] = i + 1;
+        }
+    }
+
+    /**
+     * Reads a glossary file.
+     *
+     * @param file
+     *            the input file
+     * @return the words and descriptions of file
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static GlossaryTerms read(Path file) throws IOException {
+        return of(MappedTerms.open(file));
+    }
+
+    /**
+     * Decodes every description of a mapped glossary file.
+     *
+     * @param mapped
+     *            the mapped input file
+     * @return the words and descriptions of mapped
+     */
+    public static GlossaryTerms of(MappedTerms mapped) {
+        String[] definitions = new String[mapped.size()];
+        IntStream.range(0, definitions.length).parallel()
+                .forEach(i -> definitions[i] = mapped.definition(i));
+        return new GlossaryTerms(mapped.words(), definitions);
+    }
+
+    /**
+     * Returns the slot of word in the table.
+     *
+     * @param word
+     *            the word
+     * @return the slot holding word, or the empty slot where it belongs
+     */
+    private int slot(String word) {
+        int mask = this.slots.length - 1;
+        // the high bits of the product depend on every bit of the hash code
+        int h = (word.hashCode() * 0x9E3779B9) >>> this.shift;
+        while (this.slots[h] != 0
+                && !this.words[this.slots[h] - 1].equals(word)) {
+            h = (h + 1) & mask;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return this.words.length;
+    }
+
+    /**
+     * Returns the word with the given ordinal.
+     *
+     * @param ordinal
+     *            the ordinal
+     * @return the word
+     * @requires 0 <= ordinal < size()
+     */
+    public String word(int ordinal) {
+        return this.words[ordinal];
+    }
+
+    /**
+     * Returns the words in lexicographic order.
+     *
+     * @return a new array with every word
+     */
+    public String[] words() {
+        return Arrays.copyOf(this.words, this.words.length);
+    }
+
+    /**
+     * Returns the ordinal of word.
+     *
+     * @param word
+     *            the word
+     * @return the ordinal of word, or -1 if it is not in the glossary
+     */
+    public int ordinal(String word) {
+        return this.slots[this.slot(word)] - 1;
+    }
+
+    /**
+     * Returns the description of the word with the given ordinal.
+     *
+     * @param ordinal
+     *            the ordinal
+     * @return the description
+     * @requires 0 <= ordinal < size()
+     */
+    public String definition(int ordinal) {
+        return this.definitions[ordinal];
+    }
+
+    /**
+     * Returns the description of word.
+     *
+     * @param word
+     *            the word
+     * @return the description of word
+     * @requires word is in the glossary
+     */
+    public String definition(String word) {
+        int i = this.ordinal(word);
+        assert i >= 0 : "Violation of: word is in the glossary";
+        return this.definitions[i];
+    }
+
+}
@@ -0,0 +1,490 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Keeps a generated glossary up to date while its input file is edited.
+ *
+ * <p>
+ * The watcher remembers the bytes of the input and where each entry lies in
+ * them. When the file changes, the common prefix and suffix of the old and
+ * new bytes are skipped and only the entries in between are parsed again.
+ * The parsed entries are diffed against the previous ones: when the set of
+ * words is unchanged only the pages of the edited descriptions are written,
+ * otherwise the links of every description are checked with
+ * {@code GlossaryManifest} and only the pages whose text or links changed
+ * (for instance those that now link to a new word) are written, together
+ * with the index.
+ *
+ * <p>
+ * The pages are written as the options of the run ask: to the sink of
+ * {@code Glossary.sink} (so {@code -gzip} copies are refreshed with the
+ * pages), in the order of {@code -locale}, and with the index split as
+ * {@code -index} says. Options whose output depends on every description
+ * ({@code -archive}, {@code -backlinks}, {@code -related} and
+ * {@code -search}) rewrite the whole glossary through {@code Glossary.write}
+ * after each change instead. So does the first change after an update that
+ * failed, since its pages may be half written; a failed update is reported
+ * and the watcher keeps watching.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GlossaryWatcher {
+
+    /**
+     * Time to wait for more events after a change, in milliseconds.
+     */
+    private static final long SETTLE = 100;
+
+    /**
+     * One entry of the input file.
+     */
+    private static final class Entry {
+
+        /**
+         * The name of word.
+         */
+        private final String word;
+
+        /**
+         * The description of word.
+         */
+        private final String des;
+
+        /**
+         * Byte offset of the entry.
+         */
+        private final int start;
+
+        /**
+         * Byte offset just past the entry and the blank line after it.
+         */
+        private final int end;
+
+        /**
+         * Constructor.
+         *
+         * @param word
+         *            the name of word
+         * @param des
+         *            the description of word
+         * @param start
+         *            byte offset of the entry
+         * @param end
+         *            byte offset just past the entry
+         */
+        Entry(String word, String des, int start, int end) {
+            this.word = word;
+            this.des = des;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns this entry moved by delta bytes.
+         *
+         * @param delta
+         *            the shift
+         * @return the moved entry
+         */
+        Entry shift(int delta) {
+            return new Entry(this.word, this.des, this.start + delta,
+                    this.end + delta);
+        }
+    }
+
+    /**
+     * The input file.
+     */
+    private final Path file;
+
+    /**
+     * The output folder.
+     */
+    private final Path folder;
+
+    /**
+     * The options of the run.
+     */
+    private final String[] args;
+
+    /**
+     * Whether every change rewrites the whole glossary.
+     */
+    private final boolean whole;
+
+    /**
+     * Whether the pages are packed into an archive instead of the folder.
+     */
+    private final boolean archive;
+
+    /**
+     * Whether the last update failed before the output was up to date.
+     */
+    private boolean failed;
+
+    /**
+     * The bytes of the input when last parsed.
+     */
+    private byte[] content;
+
+    /**
+     * The entries of the input, in file order.
+     */
+    private List<Entry> entries;
+
+    /**
+     * The description of each word.
+     */
+    private HashMap<String, String> defs;
+
+    /**
+     * The words in the order of the index.
+     */
+    private String[] sorted;
+
+    /**
+     * The words in the order of the index, as a queue.
+     */
+    private Queue<String> words;
+
+    /**
+     * Linker built from every word.
+     */
+    private TermLinker linker;
+
+    /**
+     * Hashes of every page as last written.
+     */
+    private GlossaryManifest manifest;
+
+    /**
+     * Constructor; parses the input as it is now.
+     *
+     * @param file
+     *            the input file
+     * @param folder
+     *            the output folder, already generated from file
+     * @param args
+     *            the options the folder was generated with
+     * @throws IOException
+     *             if the input cannot be read
+     */
+    public GlossaryWatcher(Path file, Path folder, String[] args)
+            throws IOException {
+        this.file = file;
+        this.folder = folder;
+        this.args = args.clone();
+        boolean w = false;
+        boolean zip = false;
+        for (String a : args) {
+            zip |= a.equals("-archive");
+            w |= a.equals("-backlinks") || a.startsWith("-related=")
+                    || a.equals("-search");
+        }
+        this.whole = w || zip;
+        this.archive = zip;
+        this.content = Files.readAllBytes(file);
+        this.entries = new ArrayList<>();
+        parse(this.content, 0, new int[0], this.entries);
+        this.defs = new HashMap<>();
+        for (Entry e : this.entries) {
+            this.defs.put(e.word, e.des);
+        }
+        this.relink();
+        this.manifest = GlossaryManifest.of(this.words, this.defs::get,
+                this.linker);
+    }
+
+    /**
+     * Rebuilds the sorted words and the linker from defs.
+     */
+    private void relink() {
+        this.sorted = Glossary.sort(
+                this.defs.keySet().toArray(new String[0]), this.args);
+        this.words = Glossary.queue(this.sorted);
+        this.linker = new TermLinker(this.sorted);
+    }
+
+    /**
+     * Returns the end of the line starting at p.
+     *
+     * @param b
+     *            the bytes of the file
+     * @param p
+     *            the start of the line
+     * @return the position of the line terminator, or |b|
+     */
+    private static int lineEnd(byte[] b, int p) {
+        int e = p;
+        while (e < b.length && b[e] != '\n' && b[e] != '\r') {
+            e++;
+        }
+        return e;
+    }
+
+    /**
+     * Returns the start of the line after the one ending at e.
+     *
+     * @param b
+     *            the bytes of the file
+     * @param e
+     *            the end of a line, as returned by lineEnd
+     * @return the start of the next line
+     */
+    private static int nextLine(byte[] b, int e) {
+        int p = e;
+        if (p < b.length && b[p] == '\r') {
+            p++;
+            if (p < b.length && b[p] == '\n') {
+                p++;
+            }
+        } else if (p < b.length) {
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * Parses the entries of b from position from, like
+     * {@code Glossary.readWord}, until the end of b or until an entry would
+     * start at one of the positions in stops.
+     *
+     * @param b
+     *            the bytes of the file
+     * @param from
+     *            the start of an entry
+     * @param stops
+     *            known entry starts, ascending
+     * @param out
+     *            receives the parsed entries
+     * @return the position where parsing stopped
+     */
+    private static int parse(byte[] b, int from, int[] stops,
+            List<Entry> out) {
+        int p = from;
+        int k = 0;
+        while (k < stops.length && stops[k] < p) {
+            k++;
+        }
+        while (p < b.length && !(k < stops.length && stops[k] == p)) {
+            int start = p;
+            int e = lineEnd(b, p);
+            String word = new String(b, p, e - p, StandardCharsets.UTF_8);
+            p = nextLine(b, e);
+            StringBuilder des = new StringBuilder();
+            // the first description line is taken even when it is blank
+            e = lineEnd(b, p);
+            des.append(new String(b, p, e - p, StandardCharsets.UTF_8));
+            p = nextLine(b, e);
+            e = lineEnd(b, p);
+            while (p < b.length && e > p) {
+                des.append(new String(b, p, e - p, StandardCharsets.UTF_8));
+                p = nextLine(b, e);
+                e = lineEnd(b, p);
+            }
+            p = nextLine(b, e);
+            out.add(new Entry(word, des.toString(), start, p));
+            while (k < stops.length && stops[k] < p) {
+                k++;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Brings the output up to date with the current content of the input.
+     * If the output cannot be written, the next update rewrites all of it.
+     *
+     * @return the number of pages written
+     * @throws IOException
+     *             if the input cannot be read or a page cannot be written
+     */
+    public int update() throws IOException {
+        byte[] nb = Files.readAllBytes(this.file);
+        byte[] ob = this.content;
+        int most = Math.min(ob.length, nb.length);
+        int prefix = 0;
+        while (prefix < most && ob[prefix] == nb[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < most - prefix
+                && ob[ob.length - 1 - suffix] == nb[nb.length - 1 - suffix]) {
+            suffix++;
+        }
+        int delta = nb.length - ob.length;
+
+        // entries untouched at the head, and candidates at the tail
+        int head = 0;
+        while (head < this.entries.size()
+                && this.entries.get(head).end < prefix) {
+            head++;
+        }
+        int tail = this.entries.size();
+        while (tail > head
+                && this.entries.get(tail - 1).start > ob.length - suffix) {
+            tail--;
+        }
+        int[] stops = new int[this.entries.size() - tail];
+        for (int i = tail; i < this.entries.size(); i++) {
+            stops[i - tail] = this.entries.get(i).start + delta;
+        }
+        int from = head > 0 ? this.entries.get(head - 1).end : 0;
+        List<Entry> middle = new ArrayList<>();
+        int stop = parse(nb, from, stops, middle);
+
+        List<Entry> next = new ArrayList<>(this.entries.subList(0, head));
+        next.addAll(middle);
+        for (int i = tail; i < this.entries.size(); i++) {
+            Entry e = this.entries.get(i);
+            if (e.start + delta >= stop) {
+                next.add(e.shift(delta));
+            }
+        }
+
+        // diff the words of the re-parsed region
+        HashMap<String, String> defs2 = new HashMap<>();
+        for (Entry e : next) {
+            defs2.put(e.word, e.des);
+        }
+        List<String> changed = new ArrayList<>();
+        boolean wordsChanged = defs2.size() != this.defs.size();
+        for (Entry e : middle) {
+            String before = this.defs.get(e.word);
+            wordsChanged |= before == null;
+            if (!e.des.equals(before)) {
+                changed.add(e.word);
+            }
+        }
+        for (int i = head; i < this.entries.size(); i++) {
+            wordsChanged |= !defs2.containsKey(this.entries.get(i).word);
+        }
+        this.content = nb;
+        this.entries = next;
+        this.defs = defs2;
+
+        int written;
+        boolean retry = this.failed;
+        this.failed = true; //until the output is up to date
+        if (this.whole || retry) {
+            if (wordsChanged || retry) {
+                this.relink();
+            }
+            Glossary.write(this.sorted, this.defs::get, this.linker, null,
+                    this.folder.toString(), this.args, null);
+            this.manifest = GlossaryManifest.of(this.words, this.defs::get,
+                    this.linker);
+            written = this.words.length();
+        } else {
+            written = this.writeChanged(changed, wordsChanged);
+        }
+        if (!this.archive) {
+            // an archive is always written whole, and folder may not exist
+            this.manifest.options(Glossary.pageOptions(this.args));
+            this.manifest.save(this.folder);
+        }
+        this.failed = false;
+        return written;
+    }
+
+    /**
+     * Writes the pages affected by a change, and the index if the set of
+     * words changed.
+     *
+     * @param changed
+     *            the words whose description changed
+     * @param wordsChanged
+     *            whether the set of words changed
+     * @return the number of pages written
+     * @throws IOException
+     *             if a page cannot be written
+     */
+    private int writeChanged(List<String> changed, boolean wordsChanged)
+            throws IOException {
+        Queue<String> pages;
+        try (PageSink sink = Glossary.sink(this.folder.toString(),
+                this.args)) {
+            if (wordsChanged) {
+                this.relink();
+                GlossaryManifest old = this.manifest;
+                this.manifest = GlossaryManifest.of(this.words,
+                        this.defs::get, this.linker);
+                pages = this.manifest.changedSince(this.words, old,
+                        this.folder);
+                this.manifest.removeStale(old, this.folder);
+                Glossary.writeIndex(sink, this.sorted, this.args,
+                        this.folder);
+            } else {
+                pages = new Queue1L<>();
+                for (String word : changed) {
+                    this.manifest.put(word, this.defs.get(word), this.linker);
+                    pages.enqueue(word);
+                }
+            }
+            HtmlBuffer page = new HtmlBuffer();
+            for (String word : pages) {
+                page.clear();
+                Glossary.renderPage(page, word, this.defs.get(word),
+                        this.linker);
+                sink.write(word + ".html", page);
+            }
+        }
+        return pages.length();
+    }
+
+    /**
+     * Watches the input file and updates the output after each change, until
+     * the thread is interrupted. An update that fails is reported, and the
+     * next change tries again.
+     *
+     * @throws IOException
+     *             if the file cannot be watched
+     */
+    public void run() throws IOException {
+        Path dir = this.file.toAbsolutePath().getParent();
+        Path name = this.file.getFileName();
+        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
+            dir.register(ws, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+            boolean watching = true;
+            while (watching) {
+                WatchKey key = ws.take();
+                boolean touched = false;
+                while (key != null) {
+                    for (WatchEvent<?> ev : key.pollEvents()) {
+                        touched |= name.equals(ev.context());
+                    }
+                    watching = key.reset();
+                    key = ws.poll(SETTLE, TimeUnit.MILLISECONDS);
+                }
+                if (touched) {
+                    try {
+                        System.out.println(
+                                "updated " + this.update() + " pages");
+                    } catch (IOException e) {
+                        System.err.println("Error updating glossary " + e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@code PageSink} that also writes a gzip copy {@code <file>.gz} of every
+ * page into an output folder, for static web servers that serve precompressed
+ * files.
+ *
+ * <p>
+ * Each page is handed to the folder at once and its compression is queued on
+ * a pool of threads, so pages are compressed while the next ones are
+ * rendered; a bounded number of pages wait for compression at any time.
+ * Pages smaller than a threshold are not worth compressing and get no copy.
+ * The hash of every compressed page is kept in {@link #FILE_NAME}, and a page
+ * whose hash did not change since the last run keeps its existing copy.
+ * {@link #removeAll(Path)} deletes the copies of earlier runs once the pages
+ * are no longer compressed.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class GzipSink implements PageSink {
+
+    /**
+     * Name of the file holding the hash of each compressed page.
+     */
+    public static final String FILE_NAME = ".gzip-manifest";
+
+    /**
+     * Pages waiting for compression per thread, at most.
+     */
+    private static final int BACKLOG = 16;
+
+    /**
+     * 64-bit FNV-1a offset basis.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * 64-bit FNV-1a prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Where the pages and their copies are written.
+     */
+    private final PageSink target;
+
+    /**
+     * The output folder.
+     */
+    private final Path folder;
+
+    /**
+     * Size below which a page is not compressed.
+     */
+    private final int threshold;
+
+    /**
+     * Hash of each compressed page, by file name.
+     */
+    private final Map<String, Long> hashes;
+
+    /**
+     * The compressing threads.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * One permit per page that may wait for compression.
+     */
+    private final Semaphore backlog;
+
+    /**
+     * Errors of the compressing threads.
+     */
+    private final List<IOException> errors;
+
+    /**
+     * Constructor.
+     *
+     * @param target
+     *            where the pages and their copies are written
+     * @param folder
+     *            the output folder of target
+     * @param threshold
+     *            size in bytes below which a page is not compressed
+     * @param threads
+     *            the number of compressing threads, or 0 for one per core
+     * @throws IOException
+     *             if the hashes of the last run cannot be read
+     */
+    public GzipSink(PageSink target, Path folder, int threshold, int threads)
+            throws IOException {
+        assert threshold >= 0 : "Violation of: threshold >= 0";
+        assert threads >= 0 : "Violation of: threads >= 0";
+
+        this.target = target;
+        this.folder = folder;
+        this.threshold = threshold;
+        this.hashes = new ConcurrentHashMap<>();
+        try {
+            for (String line : Files.readAllLines(folder.resolve(FILE_NAME),
+                    StandardCharsets.UTF_8)) {
+                int sp = line.indexOf(' ');
+                this.hashes.put(line.substring(sp + 1),
+                        Long.parseUnsignedLong(line.substring(0, sp), 16));
+            }
+        } catch (NoSuchFileException e) {
+            // first run: nothing is compressed yet
+        }
+        int n = threads > 0 ? threads
+                : Runtime.getRuntime().availableProcessors();
+        this.pool = Executors.newFixedThreadPool(n);
+        this.backlog = new Semaphore(n * BACKLOG);
+        this.errors = new ArrayList<>();
+    }
+
+    /**
+     * Deletes from folder the gzip copies listed in its {@link #FILE_NAME},
+     * and that file, so that no copy outlives the page it was made from.
+     *
+     * @param folder
+     *            the output folder
+     * @throws IOException
+     *             if the list cannot be read or a file deleted
+     */
+    public static void removeAll(Path folder) throws IOException {
+        Path list = folder.resolve(FILE_NAME);
+        if (Files.exists(list)) {
+            for (String line : Files.readAllLines(list,
+                    StandardCharsets.UTF_8)) {
+                String name = line.substring(line.indexOf(' ') + 1);
+                Files.deleteIfExists(folder.resolve(name + ".gz"));
+            }
+            Files.delete(list);
+        }
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of page.
+     *
+     * @param page
+     *            the bytes
+     * @return the hash
+     */
+    private static long hash(byte[] page) {
+        long h = FNV_OFFSET;
+        for (byte b : page) {
+            h = (h ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Returns page compressed with gzip.
+     *
+     * @param page
+     *            the bytes
+     * @return the compressed bytes
+     * @throws IOException
+     *             never, the output is in memory
+     */
+    private static byte[] gzip(byte[] page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                page.length / 2);
+        // compressed once and served many times, so compress it hard
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes) {
+            {
+                this.def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(page);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public void write(String fileName, byte[] page) throws IOException {
+        this.target.write(fileName, page);
+        String gz = fileName + ".gz";
+        if (page.length < this.threshold) {
+            if (this.hashes.remove(fileName) != null) {
+                Files.deleteIfExists(this.folder.resolve(gz));
+            }
+        } else {
+            long h = hash(page);
+            Long old = this.hashes.put(fileName, h);
+            if (old == null || old != h
+                    || !Files.exists(this.folder.resolve(gz))) {
+                try {
+                    this.backlog.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while compressing", e);
+                }
+                this.pool.execute(() -> {
+                    try {
+                        this.target.write(gz, gzip(page));
+                    } catch (IOException e) {
+                        synchronized (this.errors) {
+                            this.errors.add(e);
+                        }
+                    } finally {
+                        this.backlog.release();
+                    }
+                });
+            }
+        }
+    }
+
+    @Override
+    public void write(String fileName, HtmlBuffer page) throws IOException {
+        // the buffer is reused once this returns, so the copy is needed
+        this.write(fileName, page.toByteArray());
+    }
+
+    /**
+     * Waits for the pending copies, forgets the pages that no longer exist,
+     * saves the hashes and closes the target.
+     *
+     * @throws IOException
+     *             if a copy or the hashes cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        this.pool.shutdown();
+        try {
+            boolean done = false;
+            while (!done) {
+                done = this.pool.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        }
+        try {
+            if (!this.errors.isEmpty()) {
+                throw this.errors.get(0);
+            }
+            StringBuilder out = new StringBuilder();
+            Iterator<Map.Entry<String, Long>> it = this.hashes.entrySet()
+                    .iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                if (Files.exists(this.folder.resolve(e.getKey()))) {
+                    out.append(Long.toHexString(e.getValue())).append(' ')
+                            .append(e.getKey()).append('\n');
+                } else {
+                    Files.deleteIfExists(
+                            this.folder.resolve(e.getKey() + ".gz"));
+                    it.remove();
+                }
+            }
+            Files.write(this.folder.resolve(FILE_NAME),
+                    out.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            this.target.close();
+        }
+    }
+
+}
@@ -0,0 +1,479 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * The links between the words of a glossary, found by scanning every
+ * description once.
+ *
+ * <p>
+ * Words are identified by their ordinal in the {@code TermLinker}. The scan
+ * records every link span (start, end, target) of every description, back to
+ * back in {@code int} arrays with one offset per word (compressed sparse
+ * rows). The pages are then rendered from these spans instead of linking the
+ * descriptions again, and the reverse graph (which words link to each word)
+ * is derived from them by a counting pass, also as compressed rows. A word
+ * linking to itself is not an edge of the graph.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class LinkGraph {
+
+    /**
+     * Template of a link to a word page.
+     */
+    private static final HtmlTemplate LINK = HtmlTemplate
+            .compile("<a href=\"{}.html\">{}</a>");
+
+    /**
+     * Template of the report page; the slots are the orphans and the cycles.
+     */
+    private static final HtmlTemplate REPORT = HtmlTemplate.compile(""
+            + "<html>\n<head>\n<title>Links</title>\n</head>\n<body>\n"
+            + "<h2>Links</h2>\n<hr />\n<h3>Orphans</h3>\n<ul>\n{}</ul>\n"
+            + "<h3>Cycles</h3>\n<ul>\n{}</ul>\n<hr />\n"
+            + "<p>Return to <a href=\"index.html\">index</a>.</p>\n"
+            + "</body>\n</html>\n");
+
+    /**
+     * Template of one entry of the report; the slot holds its links.
+     */
+    private static final HtmlTemplate ENTRY = HtmlTemplate
+            .compile("<li>{}</li>\n");
+
+    /**
+     * A growable list of ints.
+     */
+    private static final class IntList {
+
+        /**
+         * The values, in [0, size).
+         */
+        private int[] values = new int[16];
+
+        /**
+         * Number of values.
+         */
+        private int size;
+
+        /**
+         * Appends x.
+         *
+         * @param x
+         *            the value
+         */
+        void add(int x) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size] = x;
+            this.size++;
+        }
+    }
+
+    /**
+     * The words, indexed by ordinal.
+     */
+    private final String[] terms;
+
+    /**
+     * Links of word s are spans [spans[s], spans[s + 1]).
+     */
+    private final int[] spans;
+
+    /**
+     * Start of each link span in the description.
+     */
+    private final int[] starts;
+
+    /**
+     * End of each link span in the description.
+     */
+    private final int[] ends;
+
+    /**
+     * Target of each link span.
+     */
+    private final int[] targets;
+
+    /**
+     * Words linking to word t are referrers[refs[t], refs[t + 1]).
+     */
+    private final int[] refs;
+
+    /**
+     * Words linking to each word, ascending, back to back.
+     */
+    private final int[] referrers;
+
+    /**
+     * Constructor.
+     *
+     * @param terms
+     *            the words, indexed by ordinal
+     * @param spans
+     *            start of the link spans of each word, and the end
+     * @param starts
+     *            start of each link span
+     * @param ends
+     *            end of each link span
+     * @param targets
+     *            target of each link span
+     */
+    private LinkGraph(String[] terms, int[] spans, int[] starts, int[] ends,
+            int[] targets) {
+        this.terms = terms;
+        this.spans = spans;
+        this.starts = starts;
+        this.ends = ends;
+        this.targets = targets;
+
+        // count the distinct referrers of each word, then place them
+        int n = terms.length;
+        int[] mark = new int[n];
+        Arrays.fill(mark, -1);
+        this.refs = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            for (int p = spans[s]; p < spans[s + 1]; p++) {
+                int t = this.targets[p];
+                if (t != s && mark[t] != s) {
+                    mark[t] = s;
+                    this.refs[t + 1]++;
+                }
+            }
+        }
+        for (int t = 0; t < n; t++) {
+            this.refs[t + 1] += this.refs[t];
+        }
+        this.referrers = new int[this.refs[n]];
+        int[] next = Arrays.copyOf(this.refs, n);
+        Arrays.fill(mark, -1);
+        for (int s = 0; s < n; s++) {
+            for (int p = spans[s]; p < spans[s + 1]; p++) {
+                int t = this.targets[p];
+                if (t != s && mark[t] != s) {
+                    mark[t] = s;
+                    this.referrers[next[t]] = s;
+                    next[t]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans the description of every word of linker once and records its
+     * links, splitting the words among threads.
+     *
+     * @param linker
+     *            linker built from every word of the glossary
+     * @param des
+     *            gives the description of each word
+     * @param threads
+     *            the number of threads, or 0 for one per core
+     * @return the graph
+     */
+    public static LinkGraph build(TermLinker linker,
+            Function<String, String> des, int threads) {
+        int n = linker.termCount();
+        int parts = threads > 0 ? threads
+                : Runtime.getRuntime().availableProcessors();
+        int chunk = Math.max(1, (n + parts - 1) / parts);
+        int k = (n + chunk - 1) / chunk;
+        int[] spans = new int[n + 1];
+        // each part scans a range of words, so the parts join in order
+        int[][] local = IntStream.range(0, k).parallel().mapToObj(j -> {
+            IntList links = new IntList();
+            int to = Math.min(n, (j + 1) * chunk);
+            for (int s = j * chunk; s < to; s++) {
+                int before = links.size;
+                linker.links(des.apply(linker.term(s)), (start, end, t) -> {
+                    links.add(start);
+                    links.add(end);
+                    links.add(t);
+                });
+                spans[s + 1] = (links.size - before) / 3;
+            }
+            return Arrays.copyOf(links.values, links.size);
+        }).toArray(int[][]::new);
+
+        for (int s = 0; s < n; s++) {
+            spans[s + 1] += spans[s];
+        }
+        int[] links = new int[3 * spans[n]];
+        int p = 0;
+        for (int[] part : local) {
+            System.arraycopy(part, 0, links, p, part.length);
+            p += part.length;
+        }
+        String[] terms = new String[n];
+        for (int s = 0; s < n; s++) {
+            terms[s] = linker.term(s);
+        }
+        int m = spans[n];
+        int[] starts = new int[m];
+        int[] ends = new int[m];
+        int[] targets = new int[m];
+        for (int i = 0; i < m; i++) {
+            starts[i] = links[3 * i];
+            ends[i] = links[3 * i + 1];
+            targets[i] = links[3 * i + 2];
+        }
+        return new LinkGraph(terms, spans, starts, ends, targets);
+    }
+
+    /**
+     * Returns the graph of links recorded earlier, such as by
+     * {@code GlossarySnapshot}, without scanning any description.
+     *
+     * @param terms
+     *            the words, indexed by ordinal
+     * @param spans
+     *            the links of word s are [spans[s], spans[s + 1])
+     * @param starts
+     *            start of each link span in its description
+     * @param ends
+     *            end of each link span in its description
+     * @param targets
+     *            ordinal of the target of each link span
+     * @return the graph
+     * @requires |spans| = |terms| + 1, spans is non-decreasing from 0 to
+     *           |starts| = |ends| = |targets|, and every target is an ordinal
+     */
+    public static LinkGraph of(String[] terms, int[] spans, int[] starts,
+            int[] ends, int[] targets) {
+        assert spans.length == terms.length + 1 : ""
+                + "Violation of: |spans| = |terms| + 1";
+        assert spans[terms.length] == targets.length : ""
+                + "Violation of: spans ends at |targets|";
+        return new LinkGraph(terms, spans, starts, ends, targets);
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return this.terms.length;
+    }
+
+    /**
+     * Returns the number of links in all the descriptions.
+     *
+     * @return the number of links
+     */
+    public int linkCount() {
+        return this.targets.length;
+    }
+
+    /**
+     * Reports the recorded links of word s to listener, like
+     * {@code TermLinker.links} does when it scans the description.
+     *
+     * @param s
+     *            the ordinal of the word
+     * @param listener
+     *            the listener told about each link
+     * @requires 0 <= s < size()
+     */
+    public void links(int s, TermLinker.LinkListener listener) {
+        for (int p = this.spans[s]; p < this.spans[s + 1]; p++) {
+            listener.linked(this.starts[p], this.ends[p], this.targets[p]);
+        }
+    }
+
+    /**
+     * Appends the description of word s to out with its recorded links, the
+     * bytes {@code TermLinker.link} would append, without scanning it again.
+     *
+     * @param s
+     *            the ordinal of the word
+     * @param des
+     *            the description of the word, as it was scanned
+     * @param out
+     *            the buffer receiving the linked description
+     * @updates out
+     * @requires 0 <= s < size()
+     */
+    public void link(int s, CharSequence des, HtmlBuffer out) {
+        int at = 0;
+        for (int p = this.spans[s]; p < this.spans[s + 1]; p++) {
+            out.escaped(des, at, this.starts[p]);
+            String t = this.terms[this.targets[p]];
+            LINK.render(out, t, t);
+            at = this.ends[p];
+        }
+        out.escaped(des, at, des.length());
+    }
+
+    /**
+     * Returns the words whose description links to word t.
+     *
+     * @param t
+     *            the ordinal of the word
+     * @return the ordinals of the referrers, ascending
+     * @requires 0 <= t < size()
+     */
+    public int[] referrers(int t) {
+        return Arrays.copyOfRange(this.referrers, this.refs[t],
+                this.refs[t + 1]);
+    }
+
+    /**
+     * Appends a link to each word whose description links to word t,
+     * separated by commas.
+     *
+     * @param t
+     *            the ordinal of the word
+     * @param out
+     *            the buffer receiving the links
+     * @updates out
+     * @requires 0 <= t < size()
+     */
+    public void renderReferrers(int t, HtmlBuffer out) {
+        this.renderLinks(this.referrers, this.refs[t], this.refs[t + 1],
+                out);
+    }
+
+    /**
+     * Appends a link to each word of ordinals[from, to), separated by commas.
+     *
+     * @param ordinals
+     *            the words
+     * @param from
+     *            index of the first word
+     * @param to
+     *            index just past the last word
+     * @param out
+     *            the buffer receiving the links
+     */
+    private void renderLinks(int[] ordinals, int from, int to,
+            HtmlBuffer out) {
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                out.raw(", ");
+            }
+            String w = this.terms[ordinals[i]];
+            LINK.render(out, w, w);
+        }
+    }
+
+    /**
+     * Returns the words no other description links to.
+     *
+     * @return the ordinals of the orphans, ascending
+     */
+    public int[] orphans() {
+        return IntStream.range(0, this.terms.length)
+                .filter(t -> this.refs[t] == this.refs[t + 1]).toArray();
+    }
+
+    /**
+     * Returns the groups of words that link to each other in a cycle: every
+     * strongly connected component of the graph with more than one word.
+     *
+     * @return the ordinals of each group, ascending, ordered by their first
+     *         word
+     */
+    public List<int[]> cycles() {
+        // Tarjan's algorithm, with explicit stacks
+        int n = this.terms.length;
+        int[] index = new int[n];
+        Arrays.fill(index, -1);
+        int[] low = new int[n];
+        int[] edge = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int sp = 0;
+        int[] calls = new int[n];
+        int depth = 0;
+        int counter = 0;
+        List<int[]> groups = new ArrayList<>();
+        for (int r = 0; r < n; r++) {
+            if (index[r] < 0) {
+                index[r] = counter;
+                low[r] = counter;
+                counter++;
+                edge[r] = this.spans[r];
+                stack[sp] = r;
+                sp++;
+                onStack[r] = true;
+                calls[depth] = r;
+                depth++;
+            }
+            while (depth > 0) {
+                int v = calls[depth - 1];
+                if (edge[v] < this.spans[v + 1]) {
+                    int w = this.targets[edge[v]];
+                    edge[v]++;
+                    if (index[w] < 0) {
+                        index[w] = counter;
+                        low[w] = counter;
+                        counter++;
+                        edge[w] = this.spans[w];
+                        stack[sp] = w;
+                        sp++;
+                        onStack[w] = true;
+                        calls[depth] = w;
+                        depth++;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    depth--;
+                    if (depth > 0) {
+                        int u = calls[depth - 1];
+                        low[u] = Math.min(low[u], low[v]);
+                    }
+                    if (low[v] == index[v]) {
+                        int top = sp;
+                        do {
+                            sp--;
+                            onStack[stack[sp]] = false;
+                        } while (stack[sp] != v);
+                        if (top - sp > 1) {
+                            int[] group = Arrays.copyOfRange(stack, sp, top);
+                            Arrays.sort(group);
+                            groups.add(group);
+                        }
+                    }
+                }
+            }
+        }
+        groups.sort((a, b) -> Integer.compare(a[0], b[0]));
+        return groups;
+    }
+
+    /**
+     * Writes {@code links.html} into sink, listing the orphans and the
+     * cycles.
+     *
+     * @param sink
+     *            where the report is written
+     * @throws IOException
+     *             if the report cannot be written
+     */
+    public void writeReport(PageSink sink) throws IOException {
+        HtmlBuffer out = new HtmlBuffer();
+        REPORT.fragment(out, 0);
+        int[] orphans = this.orphans();
+        for (int i = 0; i < orphans.length; i++) {
+            ENTRY.fragment(out, 0);
+            this.renderLinks(orphans, i, i + 1, out);
+            ENTRY.fragment(out, 1);
+        }
+        REPORT.fragment(out, 1);
+        for (int[] group : this.cycles()) {
+            ENTRY.fragment(out, 0);
+            this.renderLinks(group, 0, group.length, out);
+            ENTRY.fragment(out, 1);
+        }
+        REPORT.fragment(out, 2);
+        sink.write("links.html", out);
+    }
+
+}
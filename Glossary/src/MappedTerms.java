@@ -0,0 +1,401 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A glossary input file read through a memory mapping.
+ *
+ * <p>
+ * Only the words are decoded when the file is opened; for each description
+ * just its byte offset and length are kept, and the text is decoded from the
+ * mapping when a page asks for it. The file is parsed exactly like
+ * {@code Glossary.readWord} does: a word on one line, its description on the
+ * following lines up to a blank line, the lines joined without separators.
+ * When a word appears twice, its last description wins.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class MappedTerms {
+
+    /**
+     * Log2 of the size of each mapped segment of the file.
+     */
+    private static final int SEGMENT_BITS = 30;
+
+    /**
+     * Size of each mapped segment of the file.
+     */
+    private static final long SEGMENT = 1L << SEGMENT_BITS;
+
+    /**
+     * Runs shorter than this are sorted by insertion.
+     */
+    private static final int INSERTION_SORT = 16;
+
+    /**
+     * The mapped segments; segment i starts at byte i * SEGMENT.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Size of the file in bytes.
+     */
+    private final long size;
+
+    /**
+     * The words, in lexicographic order once sorted.
+     */
+    private String[] words;
+
+    /**
+     * Byte offset of the description of each word.
+     */
+    private long[] offsets;
+
+    /**
+     * Byte length of the description of each word.
+     */
+    private int[] lengths;
+
+    /**
+     * Number of words.
+     */
+    private int count;
+
+    /**
+     * Constructor.
+     *
+     * @param segments
+     *            the mapped segments of the file
+     * @param size
+     *            size of the file in bytes
+     */
+    private MappedTerms(MappedByteBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+        final int initial = 16;
+        this.words = new String[initial];
+        this.offsets = new long[initial];
+        this.lengths = new int[initial];
+    }
+
+    /**
+     * Maps the given glossary file and indexes its words.
+     *
+     * @param file
+     *            the glossary input file
+     * @return the indexed file, with the words in lexicographic order
+     * @throws IOException
+     *             if the file cannot be mapped
+     */
+    public static MappedTerms open(Path file) throws IOException {
+        MappedTerms t;
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = ch.size();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size
+                    + SEGMENT - 1) / SEGMENT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = i * SEGMENT;
+                segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(SEGMENT, size - start));
+            }
+            t = new MappedTerms(segments, size);
+        }
+        t.index();
+        t.sort();
+        return t;
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Returns the size of the file when it was mapped.
+     *
+     * @return the size in bytes
+     */
+    public long fileSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the bytes of the file, as parsed.
+     *
+     * @return read-only views of the mapped segments, in file order
+     */
+    public ByteBuffer[] bytes() {
+        ByteBuffer[] r = new ByteBuffer[this.segments.length];
+        for (int i = 0; i < r.length; i++) {
+            r[i] = this.segments[i].asReadOnlyBuffer();
+        }
+        return r;
+    }
+
+    /**
+     * Returns the words in lexicographic order.
+     *
+     * @return a new array with every word, each once
+     */
+    public String[] words() {
+        return Arrays.copyOf(this.words, this.count);
+    }
+
+    /**
+     * Returns the description of word, decoded from the mapping.
+     *
+     * @param word
+     *            the name of word
+     * @return the description of word
+     * @requires word is one of words()
+     */
+    public String definition(String word) {
+        int i = Arrays.binarySearch(this.words, 0, this.count, word);
+        assert i >= 0 : "Violation of: word is one of words()";
+        return this.definition(i);
+    }
+
+    /**
+     * Returns the description of the i-th word of words(), decoded from the
+     * mapping.
+     *
+     * @param i
+     *            the index of the word in words()
+     * @return the description of the word
+     * @requires 0 <= i < size()
+     */
+    public String definition(int i) {
+        byte[] b = new byte[this.lengths[i]];
+        this.copy(this.offsets[i], b);
+        // line terminators never occur inside a UTF-8 sequence: drop them
+        int n = 0;
+        for (int k = 0; k < b.length; k++) {
+            if (b[k] != '\n' && b[k] != '\r') {
+                b[n] = b[k];
+                n++;
+            }
+        }
+        return new String(b, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the bytes of the file starting at position p into dst.
+     *
+     * @param p
+     *            the position
+     * @param dst
+     *            the destination
+     * @requires p + |dst| <= size
+     */
+    private void copy(long p, byte[] dst) {
+        int done = 0;
+        while (done < dst.length) {
+            long q = p + done;
+            ByteBuffer seg = this.segments[(int) (q >>> SEGMENT_BITS)]
+                    .duplicate();
+            seg.position((int) (q & (SEGMENT - 1)));
+            int n = Math.min(dst.length - done, seg.remaining());
+            seg.get(dst, done, n);
+            done += n;
+        }
+    }
+
+    /**
+     * Returns the byte at position p of the file.
+     *
+     * @param p
+     *            the position
+     * @return the byte at p
+     */
+    private byte byteAt(long p) {
+        return this.segments[(int) (p >>> SEGMENT_BITS)]
+                .get((int) (p & (SEGMENT - 1)));
+    }
+
+    /**
+     * Returns the end of the line starting at p.
+     *
+     * @param p
+     *            the start of the line
+     * @return the position of the line terminator, or size at end of file
+     */
+    private long lineEnd(long p) {
+        long e = p;
+        boolean found = false;
+        while (e < this.size && !found) {
+            // scan what is left of the segment holding e
+            MappedByteBuffer seg = this.segments[(int) (e >>> SEGMENT_BITS)];
+            long base = e & ~(SEGMENT - 1);
+            int k = (int) (e - base);
+            int limit = seg.limit();
+            byte b = 0;
+            while (k < limit && (b = seg.get(k)) != '\n' && b != '\r') {
+                k++;
+            }
+            found = k < limit;
+            e = base + k;
+        }
+        return e;
+    }
+
+    /**
+     * Returns the start of the line after the one ending at e.
+     *
+     * @param e
+     *            the end of a line, as returned by lineEnd
+     * @return the start of the next line
+     */
+    private long nextLine(long e) {
+        long p = e;
+        if (p < this.size && this.byteAt(p) == '\r') {
+            p++;
+            if (p < this.size && this.byteAt(p) == '\n') {
+                p++;
+            }
+        } else if (p < this.size) {
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * Records the words and the place of the descriptions.
+     */
+    private void index() {
+        long p = 0;
+        while (p < this.size) {
+            long e = this.lineEnd(p);
+            byte[] w = new byte[(int) (e - p)];
+            this.copy(p, w);
+            String word = new String(w, StandardCharsets.UTF_8);
+            p = this.nextLine(e);
+            // the first description line is taken even when it is blank
+            long start = p;
+            e = this.lineEnd(p);
+            long end = e;
+            p = this.nextLine(e);
+            e = this.lineEnd(p);
+            while (p < this.size && e > p) {
+                end = e;
+                p = this.nextLine(e);
+                e = this.lineEnd(p);
+            }
+            p = this.nextLine(e);
+            this.add(word, start, (int) (end - start));
+        }
+    }
+
+    /**
+     * Appends an entry.
+     *
+     * @param word
+     *            the name of word
+     * @param offset
+     *            byte offset of the description
+     * @param length
+     *            byte length of the description
+     */
+    private void add(String word, long offset, int length) {
+        if (this.count == this.words.length) {
+            int n = this.count * 2;
+            this.words = Arrays.copyOf(this.words, n);
+            this.offsets = Arrays.copyOf(this.offsets, n);
+            this.lengths = Arrays.copyOf(this.lengths, n);
+        }
+        this.words[this.count] = word;
+        this.offsets[this.count] = offset;
+        this.lengths[this.count] = length;
+        this.count++;
+    }
+
+    /**
+     * Sorts the entries by word in lexicographic order and keeps only the
+     * last entry of each word.
+     */
+    private void sort() {
+        int[] order = new int[this.count];
+        for (int i = 0; i < this.count; i++) {
+            order[i] = i;
+        }
+        mergeSort(this.words, order, order.clone(), 0, this.count);
+        String[] words2 = new String[this.count];
+        long[] offsets2 = new long[this.count];
+        int[] lengths2 = new int[this.count];
+        int n = 0;
+        for (int i = 0; i < this.count; i++) {
+            // the sort is stable, so duplicates are in file order
+            if (i + 1 == this.count
+                    || !this.words[order[i]].equals(this.words[order[i + 1]])) {
+                words2[n] = this.words[order[i]];
+                offsets2[n] = this.offsets[order[i]];
+                lengths2[n] = this.lengths[order[i]];
+                n++;
+            }
+        }
+        this.words = words2;
+        this.offsets = offsets2;
+        this.lengths = lengths2;
+        this.count = n;
+    }
+
+    /**
+     * Stably sorts order[lo, hi) by the words the entries refer to, without
+     * boxing the indices.
+     *
+     * @param w
+     *            the words
+     * @param order
+     *            indices into w
+     * @param tmp
+     *            a copy of order[lo, hi) at the same positions
+     * @param lo
+     *            start of the range
+     * @param hi
+     *            end of the range
+     * @updates order, tmp
+     */
+    private static void mergeSort(String[] w, int[] order, int[] tmp, int lo,
+            int hi) {
+        if (hi - lo < INSERTION_SORT) {
+            for (int i = lo + 1; i < hi; i++) {
+                int x = order[i];
+                int j = i;
+                while (j > lo && w[order[j - 1]].compareTo(w[x]) > 0) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = x;
+            }
+        } else {
+            int mid = (lo + hi) >>> 1;
+            // sort the halves of tmp, then merge them back into order
+            mergeSort(w, tmp, order, lo, mid);
+            mergeSort(w, tmp, order, mid, hi);
+            int a = lo;
+            int b = mid;
+            for (int i = lo; i < hi; i++) {
+                if (b >= hi || (a < mid
+                        && w[tmp[a]].compareTo(w[tmp[b]]) <= 0)) {
+                    order[i] = tmp[a];
+                    a++;
+                } else {
+                    order[i] = tmp[b];
+                    b++;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the generated pages of a glossary.
+ *
+ * <p>
+ * Implementations must accept pages from several threads at once.
+ *
+ * @author Bowei Kou
+ *
+ */
+public interface PageSink extends Closeable {
+
+    /**
+     * Stores a page.
+     *
+     * @param fileName
+     *            the file name of the page, such as {@code index.html}
+     * @param page
+     *            the bytes of the page
+     * @throws IOException
+     *             if the page cannot be stored
+     */
+    void write(String fileName, byte[] page) throws IOException;
+
+    /**
+     * Stores a page rendered into a buffer.
+     *
+     * @param fileName
+     *            the file name of the page, such as {@code index.html}
+     * @param page
+     *            the buffer holding the page
+     * @throws IOException
+     *             if the page cannot be stored
+     */
+    default void write(String fileName, HtmlBuffer page) throws IOException {
+        this.write(fileName, page.toByteArray());
+    }
+
+}
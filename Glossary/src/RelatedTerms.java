@@ -0,0 +1,408 @@
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * The words of a glossary whose descriptions are most alike, found with
+ * MinHash signatures and locality-sensitive hashing instead of comparing
+ * every pair of descriptions.
+ *
+ * <p>
+ * Each description is reduced to the set of hashes of its lower-cased
+ * tokens. The MinHash signature of a set keeps, for each of
+ * {@link #BANDS} x {@link #ROWS} hash functions, the least hash of the set;
+ * two sets agree on one value of their signatures with a probability equal
+ * to their Jaccard similarity. The signatures are cut into bands of
+ * {@link #ROWS} values, and words whose signatures agree on a whole band
+ * fall in the same bucket of that band. Only the pairs of words sharing a
+ * bucket are candidates, and each candidate pair is verified with the exact
+ * Jaccard similarity of the two sets; a word keeps its k most similar
+ * words. A pair with a similarity of 0.3 shares a bucket with a probability
+ * of 0.95, one of 0.2 with a probability of 0.73, one of 0.05 only 0.08.
+ *
+ * <p>
+ * A bucket is sorted by word, and a word is only paired with the next
+ * {@link #WINDOW} words of its bucket, so the number of candidates grows
+ * linearly with the number of words even when many descriptions are alike.
+ * The values of a band are computed as the band is bucketed, so whole
+ * signatures are never stored: beyond the token sets, memory is one bucket
+ * key per word for each band in progress. The bands and the verification
+ * are computed in parallel, and the result does not depend on the number of
+ * threads.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class RelatedTerms {
+
+    /**
+     * Number of bands of a signature.
+     */
+    public static final int BANDS = 32;
+
+    /**
+     * Number of values in each band.
+     */
+    public static final int ROWS = 2;
+
+    /**
+     * Number of later words of its bucket a word is paired with.
+     */
+    public static final int WINDOW = 32;
+
+    /**
+     * Least similarity of two related words.
+     */
+    public static final float MIN_SIMILARITY = 0.2f;
+
+    /**
+     * Characters separating the tokens of a description.
+     */
+    private static final Tokenizer TOKENS = new Tokenizer(
+            " \t\n\r,.;:!?()[]{}\"'");
+
+    /**
+     * Template of a link to a word page.
+     */
+    private static final HtmlTemplate LINK = HtmlTemplate
+            .compile("<a href=\"{}.html\">{}</a>");
+
+    /**
+     * The words, indexed by ordinal.
+     */
+    private final String[] terms;
+
+    /**
+     * Words related to word s are related[rows[s], rows[s + 1]).
+     */
+    private final int[] rows;
+
+    /**
+     * Related words, most similar first, back to back.
+     */
+    private final int[] related;
+
+    /**
+     * Similarity of each related word.
+     */
+    private final float[] scores;
+
+    /**
+     * A growable list of longs.
+     */
+    private static final class LongList {
+
+        /**
+         * The values, in [0, size).
+         */
+        private long[] values = new long[16];
+
+        /**
+         * Number of values.
+         */
+        private int size;
+
+        /**
+         * Appends x.
+         *
+         * @param x
+         *            the value
+         */
+        void add(long x) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size] = x;
+            this.size++;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param terms
+     *            the words, indexed by ordinal
+     * @param rows
+     *            start of the related words of each word, and the end
+     * @param related
+     *            the related words
+     * @param scores
+     *            the similarity of each related word
+     */
+    private RelatedTerms(String[] terms, int[] rows, int[] related,
+            float[] scores) {
+        this.terms = terms;
+        this.rows = rows;
+        this.related = related;
+        this.scores = scores;
+    }
+
+    /**
+     * Returns x with its bits mixed (the finalizer of MurmurHash3).
+     *
+     * @param x
+     *            the value
+     * @return the mixed value
+     */
+    private static int mix(int x) {
+        final int m1 = 0x85EBCA6B;
+        final int m2 = 0xC2B2AE35;
+        final int s1 = 16;
+        final int s2 = 13;
+        int h = x;
+        h ^= h >>> s1;
+        h *= m1;
+        h ^= h >>> s2;
+        h *= m2;
+        h ^= h >>> s1;
+        return h;
+    }
+
+    /**
+     * Returns the hashes of the lower-cased tokens of des.
+     *
+     * @param des
+     *            the description
+     * @return the distinct hashes, ascending
+     */
+    static int[] tokens(CharSequence des) {
+        // a token and its separator take two characters, but for the last
+        int[] h = new int[des.length() / 2 + 1];
+        int[] n = { 0 };
+        TOKENS.words(des, (start, end) -> {
+            int x = 0;
+            for (int i = start; i < end; i++) {
+                x = 31 * x + Character.toLowerCase(des.charAt(i));
+            }
+            h[n[0]] = mix(x);
+            n[0]++;
+        });
+        int[] set = Arrays.copyOf(h, n[0]);
+        Arrays.sort(set);
+        int k = 0;
+        for (int i = 0; i < set.length; i++) {
+            if (i == 0 || set[i] != set[i - 1]) {
+                set[k] = set[i];
+                k++;
+            }
+        }
+        return Arrays.copyOf(set, k);
+    }
+
+    /**
+     * Returns the Jaccard similarity of two sets.
+     *
+     * @param a
+     *            a set, distinct values ascending
+     * @param b
+     *            a set, distinct values ascending
+     * @return |a intersection b| / |a union b|, 0 when both are empty
+     */
+    static float jaccard(int[] a, int[] b) {
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        int union = a.length + b.length - common;
+        return union == 0 ? 0f : (float) common / union;
+    }
+
+    /**
+     * Finds the k words most similar to each word of terms.
+     *
+     * @param terms
+     *            the words; a word's ordinal is its index
+     * @param des
+     *            gives the description of each word
+     * @param k
+     *            the number of related words to keep for each word
+     * @param threads
+     *            the number of threads, or 0 for one per core
+     * @return the related words
+     */
+    public static RelatedTerms build(String[] terms,
+            Function<String, String> des, int k, int threads) {
+        assert k >= 0 : "Violation of: k >= 0";
+        assert threads >= 0 : "Violation of: threads >= 0";
+
+        int n = terms.length;
+        int parts = threads > 0 ? threads
+                : Runtime.getRuntime().availableProcessors();
+        int chunk = Math.max(1, (n + parts - 1) / parts);
+        int[][] sets = new int[n][];
+        IntStream.range(0, (n + chunk - 1) / chunk).parallel().forEach(j -> {
+            int to = Math.min(n, (j + 1) * chunk);
+            for (int s = j * chunk; s < to; s++) {
+                sets[s] = tokens(des.apply(terms[s]));
+            }
+        });
+
+        // candidate pairs (a << 32 | b), a < b, from the buckets of each band
+        long[][] bands = IntStream.range(0, BANDS).parallel().mapToObj(b -> {
+            LongList keys = new LongList();
+            int[] band = new int[ROWS];
+            for (int s = 0; s < n; s++) {
+                if (sets[s].length > 0) {
+                    // the values of the signature in band b only
+                    Arrays.fill(band, Integer.MAX_VALUE);
+                    for (int x : sets[s]) {
+                        for (int r = 0; r < ROWS; r++) {
+                            // one permutation of the hashes per seed
+                            int v = mix(x ^ (b * ROWS + r + 1) * 0x9E3779B9);
+                            if (v < band[r]) {
+                                band[r] = v;
+                            }
+                        }
+                    }
+                    int h = 0;
+                    for (int r = 0; r < ROWS; r++) {
+                        h = mix(h ^ band[r]);
+                    }
+                    keys.add(((long) h << 32) | s);
+                }
+            }
+            long[] sorted = Arrays.copyOf(keys.values, keys.size);
+            Arrays.sort(sorted);
+            LongList pairs = new LongList();
+            for (int i = 0; i < sorted.length; i++) {
+                int to = Math.min(sorted.length, i + 1 + WINDOW);
+                for (int j = i + 1; j < to
+                        && (sorted[j] >>> 32) == (sorted[i] >>> 32); j++) {
+                    pairs.add(((sorted[i] & 0xFFFFFFFFL) << 32)
+                            | (sorted[j] & 0xFFFFFFFFL));
+                }
+            }
+            return Arrays.copyOf(pairs.values, pairs.size);
+        }).toArray(long[][]::new);
+        long[] pairs = Arrays.stream(bands).flatMapToLong(Arrays::stream)
+                .toArray();
+        Arrays.parallelSort(pairs);
+        int m = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            if (i == 0 || pairs[i] != pairs[i - 1]) {
+                pairs[m] = pairs[i];
+                m++;
+            }
+        }
+
+        // exact similarity of each candidate pair
+        long[] unique = Arrays.copyOf(pairs, m);
+        float[] sim = new float[m];
+        IntStream.range(0, m).parallel().forEach(i -> {
+            sim[i] = jaccard(sets[(int) (unique[i] >>> 32)],
+                    sets[(int) unique[i]]);
+        });
+
+        // both words of a pair see each other, then keep the best k of each
+        int[] count = new int[n + 1];
+        for (int i = 0; i < m; i++) {
+            if (sim[i] >= MIN_SIMILARITY) {
+                count[(int) (unique[i] >>> 32) + 1]++;
+                count[(int) unique[i] + 1]++;
+            }
+        }
+        for (int s = 0; s < n; s++) {
+            count[s + 1] += count[s];
+        }
+        long[] ranked = new long[count[n]];
+        int[] next = Arrays.copyOf(count, n);
+        for (int i = 0; i < m; i++) {
+            if (sim[i] >= MIN_SIMILARITY) {
+                int a = (int) (unique[i] >>> 32);
+                int b = (int) unique[i];
+                // most similar first, then by ordinal
+                long key = (long) (Integer.MAX_VALUE
+                        - Float.floatToIntBits(sim[i])) << 32;
+                ranked[next[a]] = key | b;
+                next[a]++;
+                ranked[next[b]] = key | a;
+                next[b]++;
+            }
+        }
+        int[] rows = new int[n + 1];
+        IntStream.range(0, n).parallel().forEach(s -> {
+            Arrays.sort(ranked, count[s], count[s + 1]);
+            rows[s + 1] = Math.min(k, count[s + 1] - count[s]);
+        });
+        for (int s = 0; s < n; s++) {
+            rows[s + 1] += rows[s];
+        }
+        int[] related = new int[rows[n]];
+        float[] scores = new float[rows[n]];
+        for (int s = 0; s < n; s++) {
+            for (int i = rows[s]; i < rows[s + 1]; i++) {
+                long r = ranked[count[s] + i - rows[s]];
+                related[i] = (int) r;
+                scores[i] = Float.intBitsToFloat(
+                        Integer.MAX_VALUE - (int) (r >>> 32));
+            }
+        }
+        return new RelatedTerms(terms.clone(), rows, related, scores);
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return this.terms.length;
+    }
+
+    /**
+     * Returns the words related to word s.
+     *
+     * @param s
+     *            the ordinal of the word
+     * @return the ordinals of the related words, most similar first
+     * @requires 0 <= s < size()
+     */
+    public int[] related(int s) {
+        return Arrays.copyOfRange(this.related, this.rows[s],
+                this.rows[s + 1]);
+    }
+
+    /**
+     * Returns the similarity of the words related to word s.
+     *
+     * @param s
+     *            the ordinal of the word
+     * @return the Jaccard similarity of each word of related(s)
+     * @requires 0 <= s < size()
+     */
+    public float[] scores(int s) {
+        return Arrays.copyOfRange(this.scores, this.rows[s],
+                this.rows[s + 1]);
+    }
+
+    /**
+     * Appends a link to each word related to word s, separated by commas.
+     *
+     * @param s
+     *            the ordinal of the word
+     * @param out
+     *            the buffer receiving the links
+     * @updates out
+     * @requires 0 <= s < size()
+     */
+    public void render(int s, HtmlBuffer out) {
+        for (int i = this.rows[s]; i < this.rows[s + 1]; i++) {
+            if (i > this.rows[s]) {
+                out.raw(", ");
+            }
+            String w = this.terms[this.related[i]];
+            LINK.render(out, w, w);
+        }
+    }
+
+}
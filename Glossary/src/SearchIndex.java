@@ -0,0 +1,428 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * A full-text inverted index over the words and descriptions of a glossary.
+ *
+ * <p>
+ * Text is split into words by a {@code Tokenizer} with {@link #SEPARATORS}
+ * as the separators, and every word is lower-cased in {@code Locale.ROOT}, so
+ * the index does not depend on the default locale. Each word of the glossary
+ * gets an id, its position in the order of the glossary index. The index
+ * maps every token to the sorted ids of the words whose name or description
+ * contains it; the postings of all tokens are stored back to back in one
+ * {@code int} array.
+ *
+ * <p>
+ * {@link #write(PageSink, int)} emits the index as small JSON shards keyed by
+ * token prefix, so a page only fetches the shard of the tokens it looks up;
+ * {@link #removeStale(Path, Collection)} deletes the shards of earlier runs.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class SearchIndex {
+
+    /**
+     * Separator characters of the search tokens.
+     */
+    public static final String SEPARATORS = " \t\n\r,.;:!?()[]{}\"'/-";
+
+    /**
+     * Splits text into tokens.
+     */
+    private static final Tokenizer TOKENS = new Tokenizer(SEPARATORS);
+
+    /**
+     * Names of the files {@link #write(PageSink, int)} may write.
+     */
+    private static final Pattern SEARCH_FILE = Pattern
+            .compile("search-[0-9a-z_]+\\.json(\\.gz)?");
+
+    /**
+     * A growable list of ids.
+     */
+    private static final class IntList {
+
+        /**
+         * The ids, in [0, size).
+         */
+        private int[] ids = new int[4];
+
+        /**
+         * Number of ids.
+         */
+        private int size;
+
+        /**
+         * Appends id unless it is already the last one.
+         *
+         * @param id
+         *            the id
+         */
+        void add(int id) {
+            if (this.size == 0 || this.ids[this.size - 1] != id) {
+                if (this.size == this.ids.length) {
+                    this.ids = Arrays.copyOf(this.ids, this.size * 2);
+                }
+                this.ids[this.size] = id;
+                this.size++;
+            }
+        }
+    }
+
+    /**
+     * The words of the glossary, indexed by id.
+     */
+    private final String[] words;
+
+    /**
+     * The tokens, sorted.
+     */
+    private final String[] tokens;
+
+    /**
+     * Postings of tokens[i] are postings[offsets[i], offsets[i + 1]).
+     */
+    private final int[] offsets;
+
+    /**
+     * Postings of every token, back to back.
+     */
+    private final int[] postings;
+
+    /**
+     * Constructor.
+     *
+     * @param words
+     *            the words of the glossary, indexed by id
+     * @param tokens
+     *            the tokens, sorted
+     * @param offsets
+     *            start of the postings of each token, and the end
+     * @param postings
+     *            postings of every token, back to back
+     */
+    private SearchIndex(String[] words, String[] tokens, int[] offsets,
+            int[] postings) {
+        this.words = words;
+        this.tokens = tokens;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    /**
+     * Adds id to the postings of every token of text. The text is lower-cased
+     * once and each token is a substring of it, so a token costs one copy.
+     *
+     * @param text
+     *            the text
+     * @param id
+     *            the id of the word text belongs to
+     * @param index
+     *            the postings of each token
+     */
+    private static void addTokens(String text, int id,
+            Map<String, IntList> index) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        TOKENS.words(lower, (start, end) -> index
+                .computeIfAbsent(lower.substring(start, end),
+                        t -> new IntList())
+                .add(id));
+    }
+
+    /**
+     * Builds the index of a glossary, splitting the words among threads.
+     *
+     * @param words
+     *            the words in the order of the glossary index
+     * @param des
+     *            gives the description of each word
+     * @param threads
+     *            the number of threads, or 0 for one per core
+     * @return the index
+     */
+    public static SearchIndex build(String[] words,
+            Function<String, String> des, int threads) {
+        int parts = threads > 0 ? threads
+                : Runtime.getRuntime().availableProcessors();
+        int chunk = Math.max(1, (words.length + parts - 1) / parts);
+        int n = (words.length + chunk - 1) / chunk;
+        // each part indexes a range of ids, so its postings are sorted
+        List<Map<String, IntList>> local = IntStream.range(0, n).parallel()
+                .mapToObj(k -> {
+                    Map<String, IntList> index = new HashMap<>();
+                    int to = Math.min(words.length, (k + 1) * chunk);
+                    for (int id = k * chunk; id < to; id++) {
+                        addTokens(words[id], id, index);
+                        addTokens(des.apply(words[id]), id, index);
+                    }
+                    return index;
+                }).collect(ArrayList::new, List::add, List::addAll);
+
+        HashMap<String, Integer> sizes = new HashMap<>();
+        for (Map<String, IntList> index : local) {
+            for (Map.Entry<String, IntList> e : index.entrySet()) {
+                sizes.merge(e.getKey(), e.getValue().size, Integer::sum);
+            }
+        }
+        String[] tokens = sizes.keySet().toArray(new String[0]);
+        Arrays.parallelSort(tokens);
+        int[] offsets = new int[tokens.length + 1];
+        for (int i = 0; i < tokens.length; i++) {
+            offsets[i + 1] = offsets[i] + sizes.get(tokens[i]);
+        }
+        int[] postings = new int[offsets[tokens.length]];
+        IntStream.range(0, tokens.length).parallel().forEach(i -> {
+            int p = offsets[i];
+            for (Map<String, IntList> index : local) {
+                IntList l = index.get(tokens[i]);
+                if (l != null) {
+                    System.arraycopy(l.ids, 0, postings, p, l.size);
+                    p += l.size;
+                }
+            }
+        });
+        return new SearchIndex(words.clone(), tokens, offsets, postings);
+    }
+
+    /**
+     * Returns the number of distinct tokens.
+     *
+     * @return the number of tokens
+     */
+    public int tokenCount() {
+        return this.tokens.length;
+    }
+
+    /**
+     * Returns the ids of the words containing every token of query.
+     *
+     * @param query
+     *            the words to look for
+     * @return the matching ids, ascending
+     */
+    public int[] query(String query) {
+        Map<String, IntList> parsed = new HashMap<>();
+        addTokens(query, 0, parsed);
+        int[][] lists = new int[parsed.size()][];
+        int k = 0;
+        for (String token : parsed.keySet()) {
+            int i = Arrays.binarySearch(this.tokens, token);
+            lists[k] = i < 0 ? new int[0]
+                    : Arrays.copyOfRange(this.postings, this.offsets[i],
+                            this.offsets[i + 1]);
+            k++;
+        }
+        // intersect the shortest lists first
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] r = lists.length == 0 ? new int[0] : lists[0];
+        for (int j = 1; j < lists.length && r.length > 0; j++) {
+            r = intersect(r, lists[j]);
+        }
+        return r;
+    }
+
+    /**
+     * Returns the words containing every token of query.
+     *
+     * @param query
+     *            the words to look for
+     * @return the matching words, in the order of the glossary index
+     */
+    public String[] search(String query) {
+        int[] ids = this.query(query);
+        String[] r = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            r[i] = this.words[ids[i]];
+        }
+        return r;
+    }
+
+    /**
+     * Returns the ids present in both a and b.
+     *
+     * @param a
+     *            sorted ids, the shorter list
+     * @param b
+     *            sorted ids
+     * @return the common ids, sorted
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] r = new int[a.length];
+        int n = 0;
+        int j = 0;
+        for (int x : a) {
+            // gallop to a range of b that holds x, then search it
+            int lo = j;
+            int step = 1;
+            while (lo + step < b.length && b[lo + step] < x) {
+                lo += step;
+                step *= 2;
+            }
+            int at = Arrays.binarySearch(b, lo,
+                    Math.min(lo + step + 1, b.length), x);
+            if (at >= 0) {
+                r[n] = x;
+                n++;
+                j = at + 1;
+            } else {
+                j = -at - 1;
+            }
+        }
+        return Arrays.copyOf(r, n);
+    }
+
+    /**
+     * Returns the shard key of token.
+     *
+     * @param token
+     *            the token
+     * @param prefix
+     *            the length of the shard prefix
+     * @return the shard key, safe as part of a file name
+     */
+    public static String shardOf(String token, int prefix) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < Math.min(prefix, token.length()); i++) {
+            char c = token.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                key.append(c);
+            } else {
+                key.append('_').append(Integer.toHexString(c)).append('_');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Writes the index into sink: {@code search-words.json} lists the words by
+     * id, and {@code search-<key>.json} maps each token whose shard key is
+     * key (see {@link #shardOf(String, int)}) to its ids, stored as gaps from
+     * the previous id.
+     *
+     * @param sink
+     *            where the files are written
+     * @param prefix
+     *            the length of the shard prefix
+     * @return the names of the files written
+     * @throws IOException
+     *             if a file cannot be written
+     */
+    public List<String> write(PageSink sink, int prefix) throws IOException {
+        List<String> files = new ArrayList<>();
+        StringBuilder all = new StringBuilder("[");
+        for (int i = 0; i < this.words.length; i++) {
+            if (i > 0) {
+                all.append(',');
+            }
+            json(all, this.words[i]);
+        }
+        all.append("]\n");
+        sink.write("search-words.json",
+                all.toString().getBytes(StandardCharsets.UTF_8));
+        files.add("search-words.json");
+
+        // tokens are sorted, so each shard is one run of tokens
+        int i = 0;
+        while (i < this.tokens.length) {
+            String key = shardOf(this.tokens[i], prefix);
+            StringBuilder shard = new StringBuilder("{");
+            int first = i;
+            while (i < this.tokens.length
+                    && shardOf(this.tokens[i], prefix).equals(key)) {
+                if (i > first) {
+                    shard.append(',');
+                }
+                json(shard, this.tokens[i]);
+                shard.append(":[");
+                int last = 0;
+                for (int p = this.offsets[i]; p < this.offsets[i + 1]; p++) {
+                    if (p > this.offsets[i]) {
+                        shard.append(',');
+                    }
+                    shard.append(this.postings[p] - last);
+                    last = this.postings[p];
+                }
+                shard.append(']');
+                i++;
+            }
+            shard.append("}\n");
+            sink.write("search-" + key + ".json",
+                    shard.toString().getBytes(StandardCharsets.UTF_8));
+            files.add("search-" + key + ".json");
+        }
+        return files;
+    }
+
+    /**
+     * Deletes from folder the search files, compressed or not, whose name is
+     * not in keep.
+     *
+     * @param folder
+     *            the output folder
+     * @param keep
+     *            the names of the files written by this run
+     * @throws IOException
+     *             if the folder cannot be listed or a file deleted
+     */
+    public static void removeStale(Path folder, Collection<String> keep)
+            throws IOException {
+        if (Files.isDirectory(folder)) {
+            List<Path> stale = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(folder,
+                    "search-*")) {
+                for (Path p : ds) {
+                    String name = p.getFileName().toString();
+                    String file = name.endsWith(".gz")
+                            ? name.substring(0, name.length() - ".gz".length())
+                            : name;
+                    if (SEARCH_FILE.matcher(name).matches()
+                            && !keep.contains(file)) {
+                        stale.add(p);
+                    }
+                }
+            }
+            for (Path p : stale) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Appends s as a JSON string.
+     *
+     * @param out
+     *            the buffer
+     * @param s
+     *            the string
+     */
+    private static void json(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+}
@@ -0,0 +1,410 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Links glossary terms inside definitions in a single left-to-right scan.
+ *
+ * <p>
+ * All terms are compiled once into a character trie whose edges live in an
+ * open-addressing table keyed by (node, character). A definition is then
+ * scanned word start by word start: the trie is walked from each word start
+ * and the longest term that ends on a word boundary is replaced by an anchor,
+ * everything else is copied unchanged. Because the trie walks across
+ * separators, terms made of several words ("natural number") are linked just
+ * like single-word terms. The text around the anchors is escaped for HTML.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class TermLinker {
+
+    /**
+     * Receives the links found while scanning a definition.
+     */
+    public interface LinkListener {
+
+        /**
+         * Called for each link, in the order of the definition.
+         *
+         * @param start
+         *            index of the first character of the term in the
+         *            definition
+         * @param end
+         *            index just past the last character of the term
+         * @param target
+         *            ordinal of the linked term
+         */
+        void linked(int start, int end, int target);
+    }
+
+    /**
+     * Separator characters used by {@code Glossary.writeDes}.
+     */
+    public static final String SEPARATORS = " \t,";
+
+    /**
+     * Opening of an anchor, up to the link target.
+     */
+    private static final byte[] A_OPEN = "<a href=\""
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Middle of an anchor, between the link target and the link text.
+     */
+    private static final byte[] A_MID = ".html\">"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Closing of an anchor.
+     */
+    private static final byte[] A_CLOSE = "</a>"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Marker of an unused slot in the edge table.
+     */
+    private static final long EMPTY = -1L;
+
+    /**
+     * Root node of the trie.
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * The terms, indexed by ordinal.
+     */
+    private final String[] terms;
+
+    /**
+     * Splits definitions into words and separator strings.
+     */
+    private final Tokenizer tokenizer;
+
+    /**
+     * Edge keys, (node << 16) | character, or EMPTY.
+     */
+    private final long[] edgeKeys;
+
+    /**
+     * Child node of the edge in the same slot of edgeKeys.
+     */
+    private final int[] edgeChild;
+
+    /**
+     * termOf[node] is the ordinal of the term ending at node, or -1.
+     */
+    private final int[] termOf;
+
+    /**
+     * Number of nodes in the trie.
+     */
+    private int nodeCount;
+
+    /**
+     * Builds a linker for the given terms, using {@link #SEPARATORS}.
+     *
+     * @param terms
+     *            the glossary terms; a term's ordinal is its index
+     * @requires terms has no duplicates
+     */
+    public TermLinker(String[] terms) {
+        this(terms, SEPARATORS);
+    }
+
+    /**
+     * Builds a linker for the given terms and separator characters.
+     *
+     * @param terms
+     *            the glossary terms; a term's ordinal is its index
+     * @param separators
+     *            the separator characters
+     * @requires terms has no duplicates
+     */
+    public TermLinker(String[] terms, String separators) {
+        assert terms != null : "Violation of: terms is not null";
+        assert separators != null : "Violation of: separators is not null";
+
+        this.terms = terms.clone();
+        this.tokenizer = new Tokenizer(separators);
+
+        int chars = 1;
+        for (String t : terms) {
+            chars += t.length();
+        }
+        int capacity = Integer.highestOneBit(Math.max(chars, 8) * 2 - 1) * 2;
+        this.edgeKeys = new long[capacity];
+        Arrays.fill(this.edgeKeys, EMPTY);
+        this.edgeChild = new int[capacity];
+        this.termOf = new int[Math.max(chars, 1)];
+        Arrays.fill(this.termOf, -1);
+        this.nodeCount = 1;
+
+        for (int i = 0; i < terms.length; i++) {
+            this.insert(terms[i], i);
+        }
+    }
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return the number of terms
+     */
+    public int termCount() {
+        return this.terms.length;
+    }
+
+    /**
+     * Returns the term with the given ordinal.
+     *
+     * @param ordinal
+     *            the ordinal of the term
+     * @return the term
+     * @requires 0 <= ordinal < termCount()
+     */
+    public String term(int ordinal) {
+        return this.terms[ordinal];
+    }
+
+    /**
+     * Returns the ordinal of term.
+     *
+     * @param term
+     *            the term
+     * @return the ordinal of term, or -1 if it is not a glossary term
+     */
+    public int ordinal(CharSequence term) {
+        int node = term.length() > 0 ? ROOT : -1;
+        for (int i = 0; i < term.length() && node >= 0; i++) {
+            node = this.child(node, term.charAt(i));
+        }
+        int r = -1;
+        if (node >= 0) {
+            r = this.termOf[node];
+        }
+        return r;
+    }
+
+    /**
+     * Reports whether c is a separator character.
+     *
+     * @param c
+     *            the character
+     * @return true if c is a separator
+     */
+    public boolean isSeparator(char c) {
+        return this.tokenizer.isSeparator(c);
+    }
+
+    /**
+     * Returns text with every glossary term replaced by a link to its page.
+     *
+     * @param text
+     *            the definition
+     * @return the linked definition
+     */
+    public String link(CharSequence text) {
+        HtmlBuffer out = new HtmlBuffer();
+        this.scan(text, out, null);
+        return out.toString();
+    }
+
+    /**
+     * Appends text to out with every glossary term replaced by a link to its
+     * page. A term is linked when it starts at a word start and ends at a word
+     * end; when several terms start at the same place the longest one wins.
+     *
+     * @param text
+     *            the definition
+     * @param out
+     *            the buffer receiving the linked definition
+     * @updates out
+     */
+    public void link(CharSequence text, StringBuilder out) {
+        assert out != null : "Violation of: out is not null";
+        out.append(this.link(text));
+    }
+
+    /**
+     * Appends text to out like {@link #link(CharSequence, StringBuilder)},
+     * escaping everything but the anchors for HTML.
+     *
+     * @param text
+     *            the definition
+     * @param out
+     *            the buffer receiving the linked definition
+     * @updates out
+     */
+    public void link(CharSequence text, HtmlBuffer out) {
+        assert out != null : "Violation of: out is not null";
+        this.scan(text, out, null);
+    }
+
+    /**
+     * Appends text to out like {@link #link(CharSequence, HtmlBuffer)} and
+     * reports every link to listener.
+     *
+     * @param text
+     *            the definition
+     * @param out
+     *            the buffer receiving the linked definition
+     * @param listener
+     *            the listener told about each link
+     * @updates out
+     */
+    public void link(CharSequence text, HtmlBuffer out,
+            LinkListener listener) {
+        assert out != null : "Violation of: out is not null";
+        assert listener != null : "Violation of: listener is not null";
+        this.scan(text, out, listener);
+    }
+
+    /**
+     * Reports to listener every link {@link #link(CharSequence)} would make in
+     * text, without building the linked text.
+     *
+     * @param text
+     *            the definition
+     * @param listener
+     *            the listener told about each link
+     */
+    public void links(CharSequence text, LinkListener listener) {
+        assert listener != null : "Violation of: listener is not null";
+        this.scan(text, null, listener);
+    }
+
+    /**
+     * Scans text once, linking into out and reporting to listener.
+     *
+     * @param text
+     *            the definition
+     * @param out
+     *            the buffer receiving the linked definition, or null
+     * @param listener
+     *            the listener told about each link, or null
+     */
+    private void scan(CharSequence text, HtmlBuffer out,
+            LinkListener listener) {
+        assert text != null : "Violation of: text is not null";
+
+        int n = text.length();
+        int i = 0;
+        while (i < n) {
+            if (this.isSeparator(text.charAt(i))) {
+                // no term starts inside a separator string
+                int end = this.tokenizer.end(text, i);
+                if (out != null) {
+                    out.escaped(text, i, end);
+                }
+                i = end;
+            } else {
+                int match = -1;
+                int matchEnd = i;
+                int node = ROOT;
+                int j = i;
+                while (j < n && node >= 0) {
+                    node = this.child(node, text.charAt(j));
+                    j++;
+                    if (node >= 0 && this.termOf[node] >= 0
+                            && (j == n || this.isSeparator(text.charAt(j)))) {
+                        match = this.termOf[node];
+                        matchEnd = j;
+                    }
+                }
+                if (match >= 0) {
+                    if (out != null) {
+                        String t = this.terms[match];
+                        out.bytes(A_OPEN).escaped(t).bytes(A_MID).escaped(t)
+                                .bytes(A_CLOSE);
+                    }
+                    if (listener != null) {
+                        listener.linked(i, matchEnd, match);
+                    }
+                    i = matchEnd;
+                } else {
+                    int end = this.tokenizer.end(text, i);
+                    if (out != null) {
+                        out.escaped(text, i, end);
+                    }
+                    i = end;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds term to the trie.
+     *
+     * @param term
+     *            the term
+     * @param ordinal
+     *            the ordinal of the term
+     */
+    private void insert(String term, int ordinal) {
+        if (!term.isEmpty()) {
+            int node = ROOT;
+            for (int i = 0; i < term.length(); i++) {
+                char c = term.charAt(i);
+                int next = this.child(node, c);
+                if (next < 0) {
+                    next = this.nodeCount;
+                    this.nodeCount++;
+                    this.putEdge(node, c, next);
+                }
+                node = next;
+            }
+            this.termOf[node] = ordinal;
+        }
+    }
+
+    /**
+     * Returns the slot of edge key in the edge table.
+     *
+     * @param key
+     *            the edge key
+     * @return the slot holding key, or the empty slot where it belongs
+     */
+    private int slot(long key) {
+        int mask = this.edgeKeys.length - 1;
+        int h = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (this.edgeKeys[h] != EMPTY && this.edgeKeys[h] != key) {
+            h = (h + 1) & mask;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the child of node along c.
+     *
+     * @param node
+     *            the node
+     * @param c
+     *            the character
+     * @return the child, or -1 if there is none
+     */
+    private int child(int node, char c) {
+        int h = this.slot(((long) node << 16) | c);
+        int r = -1;
+        if (this.edgeKeys[h] != EMPTY) {
+            r = this.edgeChild[h];
+        }
+        return r;
+    }
+
+    /**
+     * Adds an edge from node along c to child.
+     *
+     * @param node
+     *            the parent node
+     * @param c
+     *            the character
+     * @param child
+     *            the child node
+     */
+    private void putEdge(int node, char c, int child) {
+        long key = ((long) node << 16) | c;
+        int h = this.slot(key);
+        this.edgeKeys[h] = key;
+        this.edgeChild[h] = child;
+    }
+
+}
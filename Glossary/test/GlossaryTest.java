@@ -1,6 +1,22 @@
 import static org.junit.Assert.assertEquals;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.junit.Test;
 
@@ -21,6 +37,50 @@ import components.simplewriter.SimpleWriter1L;
 
 public class GlossaryTest {
 
+    /**
+     * Returns the text of a file.
+     *
+     * @param file
+     *            the file
+     * @return its content, decoded as UTF-8
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the text of a file.
+     *
+     * @param file
+     *            the file
+     * @param text
+     *            its content, encoded as UTF-8
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deletes a folder and everything in it.
+     *
+     * @param dir
+     *            the folder
+     * @throws IOException
+     *             if a file cannot be deleted
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Object f : files.sorted(Comparator.reverseOrder())
+                    .toArray()) {
+                Files.delete((Path) f);
+            }
+        }
+    }
+
     /**
      * test with letter.
      */
@@ -96,6 +156,53 @@ public class GlossaryTest {
         in.close();
     }
 
+    /**
+     * test that a repeated word keeps its last description, whichever way
+     * the file is read.
+     *
+     * @throws IOException
+     *             if the temporary file cannot be written
+     */
+    @Test
+    public void testReadWordDuplicate() throws IOException {
+        Path file = Files.createTempFile("glossary", ".txt");
+        write(file, "cat\nfirst\n\ndog\nanimal\n\ncat\nsecond\n");
+        SimpleReader in = new SimpleReader1L(file.toString());
+        Map<String, String> m = new Map1L<>();
+        Queue<String> q = new Queue1L<>();
+        Glossary.readWord(in, m, q);
+        in.close();
+        assertEquals("second", m.value("cat"));
+        assertEquals(2, q.length());
+        GlossaryTerms terms = GlossaryTerms.read(file);
+        assertEquals(2, terms.size());
+        assertEquals("second", terms.definition("cat"));
+        assertEquals(0, terms.ordinal("cat"));
+        assertEquals(1, terms.ordinal("dog"));
+        assertEquals(-1, terms.ordinal("cow"));
+        Files.delete(file);
+    }
+
+    /**
+     * test that the mapped reader lists a repeated word once, with its last
+     * description, across line endings.
+     *
+     * @throws IOException
+     *             if the temporary file cannot be written
+     */
+    @Test
+    public void testMappedTerms() throws IOException {
+        Path file = Files.createTempFile("glossary", ".txt");
+        write(file, "cat\r\nfirst\r\n\r\ndog\nan\nanimal\n\ncat\n"
+                + "second\n");
+        MappedTerms terms = MappedTerms.open(file);
+        assertEquals(2, terms.size());
+        assertEquals("[cat, dog]", java.util.Arrays.toString(terms.words()));
+        assertEquals("second", terms.definition("cat"));
+        assertEquals("ananimal", terms.definition(1));
+        Files.delete(file);
+    }
+
     /**
      * test if the queue restore and check the output file.
      */
@@ -205,17 +312,822 @@ public class GlossaryTest {
         assertEquals("<a href=\"hard.html\">hard</a>", m.value("hard"));
     }
 
+    /**
+     * test a glossary with a term of several words.
+     */
+    @Test
+    public void testWriteDes4() {
+        Map<String, String> m = new Map1L<>();
+        m.add("natural number", "a number, like 1");
+        m.add("number", "a natural number");
+        m.add("1", "one");
+        TermLinker linker = Glossary.newLinker(m);
+        Glossary.writeDes(m, "number", linker);
+        Glossary.writeDes(m, "natural number", linker);
+        assertEquals("a <a href=\"natural number.html\">natural number</a>",
+                m.value("number"));
+        assertEquals("a <a href=\"number.html\">number</a>, like "
+                + "<a href=\"1.html\">1</a>", m.value("natural number"));
+    }
+
+    /**
+     * test a description with characters special in html.
+     */
+    @Test
+    public void testWriteDes5() {
+        Map<String, String> m = new Map1L<>();
+        m.add("a<b", "x & y, a<b");
+        Glossary.writeDes(m, "a<b");
+        assertEquals("x &amp; y, <a href=\"a&lt;b.html\">a&lt;b</a>",
+                m.value("a<b"));
+    }
+
+    /**
+     * test a search with several words.
+     */
+    @Test
+    public void testSearch() {
+        Map<String, String> m = new Map1L<>();
+        m.add("book", "a printed or written work");
+        m.add("word", "a string of characters");
+        m.add("term", "a word, printed in a book");
+        String[] words = { "book", "term", "word" };
+        SearchIndex index = SearchIndex.build(words, m::value, 2);
+        assertEquals(3, index.query("a").length);
+        assertEquals("book", index.search("Printed book")[0]);
+        assertEquals("term", index.search("Printed book")[1]);
+        assertEquals(2, index.search("printed BOOK").length);
+        assertEquals(0, index.search("printed string").length);
+    }
+
+    /**
+     * test that the search index ignores the default locale and that its
+     * files of earlier runs are removed.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testSearchFiles() throws IOException {
+        java.util.Locale locale = java.util.Locale.getDefault();
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        write(source, "TITLE\nthe name of a work\n");
+        try {
+            // Turkish lower-cases I to a dotless i
+            java.util.Locale.setDefault(new java.util.Locale("tr"));
+            Glossary.build(source.toString(), out.toString(),
+                    new String[] { "-search" });
+        } finally {
+            java.util.Locale.setDefault(locale);
+        }
+        assertEquals(true, read(out.resolve("search-ti.json"))
+                .contains("\"title\""));
+        write(source, "zoo\na place with animals\n");
+        Glossary.build(source.toString(), out.toString(),
+                new String[] { "-search" });
+        assertEquals(false, Files.exists(out.resolve("search-ti.json")));
+        assertEquals(true, Files.exists(out.resolve("search-zo.json")));
+        Glossary.build(source.toString(), out.toString(), new String[0]);
+        assertEquals(false, Files.exists(out.resolve("search-words.json")));
+        delete(dir);
+    }
+
+    /**
+     * test sorting words with accents in the order of a language.
+     */
+    @Test
+    public void testCollation() {
+        String[] words = { "zebra", "\u00e9clair", "eclat", "apple" };
+        String[] sorted = Collation.sort(words,
+                Collation.collator("fr"));
+        assertEquals("apple", sorted[0]);
+        assertEquals("\u00e9clair", sorted[1]);
+        assertEquals("eclat", sorted[2]);
+        assertEquals("zebra", sorted[3]);
+    }
+
+    /**
+     * test the links between the words of a glossary.
+     */
+    @Test
+    public void testBacklinks() {
+        Map<String, String> m = new Map1L<>();
+        m.add("book", "a printed work, see page");
+        m.add("page", "one side of a leaf of a book");
+        m.add("leaf", "a page of a book");
+        m.add("word", "a string of characters, as in a book");
+        String[] words = { "book", "leaf", "page", "word" };
+        TermLinker linker = new TermLinker(words);
+        LinkGraph graph = LinkGraph.build(linker, m::value, 2);
+        assertEquals(6, graph.linkCount());
+        assertEquals(3, graph.referrers(0).length);
+        assertEquals(0, graph.referrers(3).length);
+        assertEquals(1, graph.orphans().length);
+        assertEquals(1, graph.cycles().size());
+        assertEquals(3, graph.cycles().get(0).length);
+        HtmlBuffer out = new HtmlBuffer();
+        graph.link(1, m.value("leaf"), out);
+        assertEquals(linker.link(m.value("leaf")), out.toString());
+    }
+
+    /**
+     * test related
+     */
+    @Test
+    public void testRelated() {
+        Map<String, String> m = new Map1L<>();
+        m.add("cat", "a small furry animal that purrs and hunts mice");
+        m.add("kitten", "a young small furry animal that purrs and hunts");
+        m.add("lion", "a large wild cat of Africa");
+        m.add("river", "flowing fresh water in its channel");
+        String[] words = { "cat", "kitten", "lion", "river" };
+        RelatedTerms related = RelatedTerms.build(words, m::value, 2, 2);
+        assertEquals(1, related.related(0)[0]);
+        assertEquals(0, related.related(1)[0]);
+        assertEquals(0, related.related(3).length);
+        double sim = RelatedTerms.jaccard(RelatedTerms.tokens(m.value("cat")),
+                RelatedTerms.tokens(m.value("kitten")));
+        assertEquals(sim, related.scores(0)[0], 0);
+        HtmlBuffer out = new HtmlBuffer();
+        related.render(0, out);
+        assertEquals("<a href=\"kitten.html\">kitten</a>", out.toString());
+    }
+
+    /**
+     * test snapshot
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testSnapshot() throws IOException {
+        Path source = Files.createTempFile("glossary", ".txt");
+        Path snapshot = Files.createTempFile("glossary", ".snap");
+        Files.write(source, "unused\n".getBytes(StandardCharsets.UTF_8));
+        Map<String, String> m = new Map1L<>();
+        m.add("book", "a printed work, see page");
+        m.add("page", "one side of a leaf of a book");
+        m.add("leaf", "a page of a book");
+        String[] words = { "book", "leaf", "page" };
+        TermLinker linker = new TermLinker(words);
+        LinkGraph graph = LinkGraph.build(linker, m::value, 1);
+        GlossarySnapshot.write(snapshot, MappedTerms.open(source), null,
+                words, m::value, graph);
+        GlossarySnapshot snap = GlossarySnapshot.load(snapshot, source, null);
+        assertEquals(3, snap.size());
+        assertEquals("leaf", snap.word(1));
+        assertEquals(m.value("page"), snap.definition(2));
+        assertEquals(graph.linkCount(), snap.graph().linkCount());
+        HtmlBuffer out = new HtmlBuffer();
+        snap.graph().link(2, snap.definition(2), out);
+        assertEquals(linker.link(m.value("page")), out.toString());
+        assertEquals(null, GlossarySnapshot.load(snapshot, source, "fr"));
+        // a new time alone keeps the snapshot, new content of the same size
+        // and time does not
+        FileTime time = Files.getLastModifiedTime(source);
+        Files.setLastModifiedTime(source, FileTime.fromMillis(0));
+        assertEquals(3, GlossarySnapshot.load(snapshot, source, null).size());
+        Files.write(source, "UNUSED\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(source, time);
+        assertEquals(null, GlossarySnapshot.load(snapshot, source, null));
+        // a file replaced after it was parsed does not match the snapshot
+        MappedTerms parsed = MappedTerms.open(source);
+        Path edited = Files.createTempFile("glossary", ".txt");
+        Files.write(edited, "edited\n".getBytes(StandardCharsets.UTF_8));
+        Files.move(edited, source, StandardCopyOption.REPLACE_EXISTING);
+        GlossarySnapshot.write(snapshot, parsed, null, words, m::value, graph);
+        assertEquals(null, GlossarySnapshot.load(snapshot, source, null));
+        Files.delete(source);
+        Files.delete(snapshot);
+    }
+
+    /**
+     * test batch
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testBatch() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Files.write(source, "book\na printed work\n\npage\none side of a book\n"
+                .getBytes(StandardCharsets.UTF_8));
+        Path out = Files.createDirectory(dir.resolve("out"));
+        Path jobs = dir.resolve("jobs.tsv");
+        Path out2 = Files.createDirectory(dir.resolve("out2"));
+        Files.write(jobs, ("# two good jobs, one bad\n" + source + "\t" + out
+                + "\n\n" + dir.resolve("missing.txt") + "\t" + out + "\n"
+                + source + "\t" + out2
+                + "\t-threads=2 -backlinks -search -gzip -gzip-min=0\n")
+                        .getBytes(StandardCharsets.UTF_8));
+        List<GlossaryBatch.Summary> done = GlossaryBatch.run(jobs,
+                new String[] { "-batch=" + jobs }, 1);
+        assertEquals(3, done.size());
+        assertEquals(2, done.get(0).terms());
+        assertEquals(2, done.get(0).pages());
+        assertEquals(null, done.get(0).error());
+        assertEquals(true, done.get(1).error() instanceof IOException);
+        // only the term pages count, not the index, links or search files
+        assertEquals(null, done.get(2).error());
+        assertEquals(2, done.get(2).pages());
+        assertEquals(true, Files.exists(out2.resolve("links.html")));
+        // every file written counts, the gzip copies too
+        long size = 0;
+        try (Stream<Path> files = Files.list(out2)) {
+            for (Object f : files.toArray()) {
+                if (!f.equals(out2.resolve(GzipSink.FILE_NAME))) {
+                    size += Files.size((Path) f);
+                }
+            }
+        }
+        assertEquals(true, Files.exists(out2.resolve("book.html.gz")));
+        assertEquals(size, done.get(2).bytes());
+        delete(out2);
+        assertEquals(true, Files.exists(out.resolve("page.html")));
+        for (String f : new String[] { "index.html", "book.html",
+                "page.html" }) {
+            Files.delete(out.resolve(f));
+        }
+        Files.delete(out);
+        Files.delete(source);
+        Files.delete(jobs);
+        Files.delete(dir);
+    }
+
+    /**
+     * test a page whose description has characters special in html.
+     */
+    @Test
+    public void testPageText() {
+        String des = new TermLinker(new String[] { "a<b" }).link("x & a<b");
+        String page = Glossary.pageText("a<b", des);
+        assertEquals(true, page.contains("<blockquote>x &amp; "
+                + "<a href=\"a&lt;b.html\">a&lt;b</a></blockquote>"));
+        assertEquals(true, page.contains("<title>a&lt;b</title>"));
+    }
+
+    /**
+     * test the file names of the index shards, and that the shards of an
+     * earlier run are removed.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testIndexShards() throws IOException {
+        assertEquals("index-a.html", GlossaryIndex.letterFile('a'));
+        assertEquals("index-a-upper.html", GlossaryIndex.letterFile('A'));
+        assertEquals("index-7.html", GlossaryIndex.letterFile('7'));
+        assertEquals("index-ue9.html", GlossaryIndex.letterFile(0xe9));
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        write(source, "apple\na fruit\n\nApple\na company\n\n"
+                + "index-b\na word like a shard\n");
+        Glossary.build(source.toString(), out.toString(),
+                new String[] { "-index=letter" });
+        assertEquals(true, Files.exists(out.resolve("index-a.html")));
+        assertEquals(true, Files.exists(out.resolve("index-a-upper.html")));
+        assertEquals(true, Files.exists(out.resolve("index-i.html")));
+        Glossary.build(source.toString(), out.toString(),
+                new String[] { "-index=2" });
+        assertEquals(false, Files.exists(out.resolve("index-a.html")));
+        assertEquals(true, Files.exists(out.resolve("index-2.html")));
+        Glossary.build(source.toString(), out.toString(), new String[0]);
+        assertEquals(false, Files.exists(out.resolve("index-2.html")));
+        assertEquals(true, Files.exists(out.resolve("index-b.html")));
+        delete(dir);
+    }
+
+    /**
+     * test that the words of a letter share one shard when the order of the
+     * language puts other words between them.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testIndexShardsApart() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        // the hyphens are ignored: -ant, bee, -zoo
+        write(source, "-zoo\nz\n\nbee\nb\n\n-ant\na\n");
+        Glossary.build(source.toString(), out.toString(),
+                new String[] { "-index=letter", "-locale=en" });
+        String index = read(out.resolve("index.html"));
+        assertEquals(index.indexOf("index-u2d.html"),
+                index.lastIndexOf("index-u2d.html"));
+        String shard = read(out.resolve("index-u2d.html"));
+        assertEquals(true, shard.contains("-ant.html"));
+        assertEquals(true, shard.contains("-zoo.html"));
+        assertEquals(true, read(out.resolve("index-b.html"))
+                .contains("bee.html"));
+        delete(dir);
+    }
+
+    /**
+     * test that -index is neither zero, negative nor text.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testIndexOption() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        write(source, "book\na printed work\n");
+        for (String mode : new String[] { "0", "-3", "ten" }) {
+            String message = "";
+            try {
+                Glossary.build(source.toString(),
+                        dir.resolve("out").toString(),
+                        new String[] { "-index=" + mode });
+            } catch (IllegalArgumentException e) {
+                message = e.getMessage();
+            }
+            assertEquals(true, message.startsWith("-index=" + mode));
+        }
+        assertEquals(false, Files.exists(dir.resolve("out")));
+        delete(dir);
+    }
+
+    /**
+     * test that a job failing with an Error leaves the others to run, and
+     * that the error is thrown once the jobs are reported.
+     */
+    @Test
+    public void testBatchError() {
+        boolean[] ran = new boolean[1];
+        List<BatchJob> jobs = List.of(new BatchJob() {
+            @Override
+            protected void work() {
+                throw new AssertionError("bad job");
+            }
+
+            @Override
+            protected long size() {
+                return 2;
+            }
+        }, new BatchJob() {
+            @Override
+            protected void work() {
+                ran[0] = true;
+            }
+
+            @Override
+            protected long size() {
+                return 1;
+            }
+        });
+        BatchJob.runAll(jobs, 1);
+        assertEquals(true, ran[0]);
+        assertEquals(true, jobs.get(0).error() instanceof AssertionError);
+        assertEquals(null, jobs.get(1).error());
+        String thrown = "";
+        try {
+            BatchJob.rethrowErrors(jobs);
+        } catch (AssertionError e) {
+            thrown = e.getMessage();
+        }
+        assertEquals("bad job", thrown);
+    }
+
+    /**
+     * test that an incremental run writes only the changed pages, unless the
+     * options that shape the pages changed.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testIncremental() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        write(source, "book\na printed work\n\npage\none side of a book\n");
+        String[] args = { "-incremental" };
+        Glossary.build(source.toString(), out.toString(), args);
+        write(out.resolve("book.html"), "kept");
+        write(source, "book\na printed work\n\npage\none leaf of a book\n");
+        Glossary.build(source.toString(), out.toString(), args);
+        assertEquals("kept", read(out.resolve("book.html")));
+        assertEquals(true, read(out.resolve("page.html")).contains("leaf"));
+        Glossary.build(source.toString(), out.toString(),
+                new String[] { "-incremental", "-index=1" });
+        assertEquals(false, read(out.resolve("book.html")).equals("kept"));
+        assertEquals(true, read(out.resolve("index.html"))
+                .contains("index-2.html"));
+        Glossary.build(source.toString(), out.toString(),
+                new String[] { "-backlinks" });
+        assertEquals(true, read(out.resolve("book.html"))
+                .contains("Referenced by"));
+        Glossary.build(source.toString(), out.toString(), args);
+        assertEquals(false, read(out.resolve("book.html"))
+                .contains("Referenced by"));
+        delete(dir);
+    }
+
+    /**
+     * test that watching keeps the index shards, the order of the language
+     * and the gzip copies of the run.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testWatch() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        write(source, "eclat\na burst\n\nZebra\nan animal\n");
+        String[] args = { "-index=1", "-locale=fr", "-gzip", "-gzip-min=0" };
+        Glossary.build(source.toString(), out.toString(), args);
+        GlossaryWatcher watcher = new GlossaryWatcher(source, out, args);
+        write(source, "eclat\na burst, see Zebra\n\napple\na fruit\n\n"
+                + "Zebra\nan animal\n");
+        assertEquals(2, watcher.update());
+        assertEquals(true, read(out.resolve("index.html"))
+                .contains("index-3.html"));
+        assertEquals(true, read(out.resolve("index-1.html"))
+                .contains("apple"));
+        assertEquals(true, read(out.resolve("eclat.html"))
+                .contains("<a href=\"Zebra.html\">Zebra</a>"));
+        try (InputStream gz = new GZIPInputStream(
+                Files.newInputStream(out.resolve("eclat.html.gz")))) {
+            assertEquals(read(out.resolve("eclat.html")),
+                    new String(gz.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        delete(dir);
+    }
+
+    /**
+     * test that an update that cannot write a page is made good by the next
+     * one, and that watching an archive writes no manifest.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testWatchFailure() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        write(source, "book\na printed work\n\npage\none side\n");
+        Glossary.build(source.toString(), out.toString(), new String[0]);
+        GlossaryWatcher watcher = new GlossaryWatcher(source, out,
+                new String[0]);
+        // a folder where the page goes cannot be written over
+        Files.delete(out.resolve("page.html"));
+        Files.createDirectory(out.resolve("page.html"));
+        write(source, "book\na printed work\n\npage\none side of a book\n");
+        boolean failed = false;
+        try {
+            watcher.update();
+        } catch (IOException e) {
+            failed = true;
+        }
+        assertEquals(true, failed);
+        Files.delete(out.resolve("page.html"));
+        write(source, "book\na bound work\n\npage\none side of a book\n");
+        assertEquals(2, watcher.update());
+        assertEquals(true, read(out.resolve("page.html"))
+                .contains("<a href=\"book.html\">book</a>"));
+
+        String[] args = { "-archive" };
+        Path zip = dir.resolve("packed");
+        Glossary.build(source.toString(), zip.toString(), args);
+        watcher = new GlossaryWatcher(source, zip, args);
+        write(source, "book\na bound work\n\npage\none leaf\n");
+        assertEquals(2, watcher.update());
+        assertEquals(false, Files.exists(zip));
+        assertEquals(true, Files.exists(dir.resolve("packed.zip")));
+        delete(dir);
+    }
+
+    /**
+     * test that watching keeps the referrers of the pages.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testWatchBacklinks() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        write(source, "book\na printed work\n\npage\none side\n");
+        String[] args = { "-backlinks" };
+        Glossary.build(source.toString(), out.toString(), args);
+        GlossaryWatcher watcher = new GlossaryWatcher(source, out, args);
+        write(source, "book\na printed work\n\npage\none side of a book\n");
+        watcher.update();
+        assertEquals(true, read(out.resolve("book.html"))
+                .contains("Referenced by: <a href=\"page.html\">page</a>"));
+        assertEquals(true, Files.exists(out.resolve("links.html")));
+        delete(dir);
+    }
+
+    /**
+     * Returns a glossary of many short terms, as the text of its file.
+     *
+     * @param n
+     *            the number of terms
+     * @return the text
+     */
+    private static String glossary(int n) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            text.append("t").append(i).append("\nsee t").append((i * 7) % n)
+                    .append(" and t").append((i + 1) % n).append("\n\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * test that the threaded pipeline writes the pages of the sequential
+     * loop, in the order of the index.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testPipeline() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        write(source, glossary(300));
+        Path one = Files.createDirectory(dir.resolve("one"));
+        Path many = Files.createDirectory(dir.resolve("many"));
+        Glossary.build(source.toString(), one.toString(), new String[0]);
+        Glossary.build(source.toString(), many.toString(),
+                new String[] { "-threads=4" });
+        for (String f : new String[] { "index.html", "t0.html", "t99.html",
+                "t299.html" }) {
+            assertEquals(read(one.resolve(f)), read(many.resolve(f)));
+        }
+        // the writer hands the pages on in order, whatever order they
+        // were rendered in
+        List<String> order = new java.util.ArrayList<>();
+        PageSink sink = new PageSink() {
+            @Override
+            public void write(String fileName, byte[] page) {
+                order.add(fileName);
+            }
+
+            @Override
+            public void write(String fileName, HtmlBuffer page) {
+                order.add(fileName);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        String[] words = new String[3000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "w" + i;
+        }
+        GlossaryPipeline.generate(Glossary.queue(words), w -> "text of " + w,
+                new TermLinker(words), null, null, sink, 8);
+        assertEquals(words.length, order.size());
+        for (int i = 0; i < words.length; i++) {
+            assertEquals(words[i] + ".html", order.get(i));
+        }
+        delete(dir);
+    }
+
+    /**
+     * Returns the names of the entries of a zip file, in order.
+     *
+     * @param zip
+     *            the zip file
+     * @return the names
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static List<String> entries(Path zip) throws IOException {
+        List<String> names = new java.util.ArrayList<>();
+        try (ZipInputStream in = new ZipInputStream(
+                Files.newInputStream(zip))) {
+            for (ZipEntry e = in.getNextEntry(); e != null; e = in
+                    .getNextEntry()) {
+                names.add(e.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * test that an archive holds every page, in the same order with or
+     * without threads.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testArchive() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        write(source, glossary(200));
+        Glossary.build(source.toString(), dir.resolve("one").toString(),
+                new String[] { "-archive" });
+        Glossary.build(source.toString(), dir.resolve("many").toString(),
+                new String[] { "-archive", "-threads=4", "-level=1" });
+        List<String> one = entries(dir.resolve("one.zip"));
+        assertEquals(201, one.size());
+        assertEquals("index.html", one.get(0));
+        assertEquals(one, entries(dir.resolve("many.zip")));
+        delete(dir);
+    }
+
+    /**
+     * test that the gzip copies match their pages, skip the small pages and
+     * are kept while the pages do not change.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testGzipSink() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        byte[] big = glossary(50).getBytes(StandardCharsets.UTF_8);
+        byte[] small = "<p>hi</p>".getBytes(StandardCharsets.UTF_8);
+        try (PageSink sink = new GzipSink(new FolderSink(dir), dir, 64, 2)) {
+            sink.write("big.html", big);
+            sink.write("small.html", small);
+        }
+        assertEquals(true, Files.exists(dir.resolve("small.html")));
+        assertEquals(false, Files.exists(dir.resolve("small.html.gz")));
+        Path gz = dir.resolve("big.html.gz");
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gz))) {
+            assertEquals(new String(big, StandardCharsets.UTF_8),
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        FileTime old = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(gz, old);
+        try (PageSink sink = new GzipSink(new FolderSink(dir), dir, 64, 2)) {
+            sink.write("big.html", big);
+        }
+        assertEquals(old, Files.getLastModifiedTime(gz));
+        delete(dir);
+    }
+
+    /**
+     * test that turning -gzip on rewrites every page of an incremental run,
+     * and that a run without it deletes the copies of earlier runs.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testGzipOptions() throws IOException {
+        Path dir = Files.createTempDirectory("glossary");
+        Path source = dir.resolve("terms.txt");
+        Path out = Files.createDirectory(dir.resolve("out"));
+        write(source, "book\na printed work\n\npage\none side of a book\n");
+        Glossary.build(source.toString(), out.toString(),
+                new String[] { "-incremental" });
+        Glossary.build(source.toString(), out.toString(),
+                new String[] { "-incremental", "-gzip", "-gzip-min=10" });
+        assertEquals(true, Files.exists(out.resolve("book.html.gz")));
+        assertEquals(true, Files.exists(out.resolve("page.html.gz")));
+        write(source, "book\na printed work\n\npage\none leaf of a book\n");
+        Glossary.build(source.toString(), out.toString(), new String[0]);
+        assertEquals(false, Files.exists(out.resolve("book.html.gz")));
+        assertEquals(false, Files.exists(out.resolve("page.html.gz")));
+        assertEquals(false, Files.exists(out.resolve("index.html.gz")));
+        assertEquals(false, Files.exists(out.resolve(GzipSink.FILE_NAME)));
+        delete(dir);
+    }
+
+    /**
+     * Opens a request to a page of a local server.
+     *
+     * @param port
+     *            the port of the server
+     * @param path
+     *            the path of the page
+     * @return the connection
+     * @throws IOException
+     *             if the connection cannot be opened
+     */
+    private static HttpURLConnection get(int port, String path)
+            throws IOException {
+        URL url = new URL("http", InetAddress.getLoopbackAddress()
+                .getHostAddress(), port, path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    /**
+     * test that the server answers on the loopback address, with ETags, a
+     * content type and bodyless HEAD responses.
+     *
+     * @throws IOException
+     *             if the server cannot be reached
+     */
+    @Test
+    public void testServer() throws IOException {
+        Queue<String> q = new Queue1L<>();
+        q.enqueue("book");
+        q.enqueue("page");
+        java.util.Map<String, String> des = new java.util.HashMap<>();
+        des.put("book", "a printed work");
+        des.put("page", "one side of a book");
+        GlossaryServer server = new GlossaryServer(q, des::get,
+                new TermLinker(new String[] { "book", "page" }), 1 << 20);
+        int port = server.start(0);
+        try {
+            HttpURLConnection c = get(port, "/page.html");
+            assertEquals(200, c.getResponseCode());
+            assertEquals("text/html; charset=utf-8",
+                    c.getHeaderField("Content-Type"));
+            String etag = c.getHeaderField("ETag");
+            try (InputStream in = c.getInputStream()) {
+                assertEquals(true,
+                        new String(in.readAllBytes(), StandardCharsets.UTF_8)
+                                .contains("<a href=\"book.html\">book</a>"));
+            }
+            c = get(port, "/page.html");
+            c.setRequestProperty("If-None-Match", etag);
+            assertEquals(304, c.getResponseCode());
+            c = get(port, "/page.html");
+            c.setRequestProperty("If-None-Match", "\"other\"");
+            assertEquals(200, c.getResponseCode());
+            c.getInputStream().close();
+            c = get(port, "/page.html");
+            c.setRequestMethod("HEAD");
+            assertEquals(200, c.getResponseCode());
+            assertEquals(etag, c.getHeaderField("ETag"));
+            try (InputStream in = c.getInputStream()) {
+                assertEquals(0, in.readAllBytes().length);
+            }
+            assertEquals(200, get(port, "/").getResponseCode());
+            assertEquals(404, get(port, "/missing.html").getResponseCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * test that the cache of the server keeps the recent pages within its
+     * size in bytes.
+     *
+     * @throws IOException
+     *             if the server cannot be reached
+     */
+    @Test
+    public void testServerCache() throws IOException {
+        String[] words = { "book", "page" };
+        java.util.Map<String, String> des = new java.util.HashMap<>();
+        des.put("book", "a printed work");
+        des.put("page", "one side of a book");
+        TermLinker linker = new TermLinker(words);
+        int[] sizes = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            HtmlBuffer page = new HtmlBuffer();
+            Glossary.renderPage(page, words[i], des.get(words[i]), linker);
+            sizes[i] = page.length();
+        }
+        // room for the larger page, not for both
+        GlossaryServer server = new GlossaryServer(Glossary.queue(words),
+                des::get, linker, Math.max(sizes[0], sizes[1]));
+        int port = server.start(0);
+        try {
+            assertEquals(200, get(port, "/book.html").getResponseCode());
+            assertEquals(sizes[0], server.cachedBytes());
+            assertEquals(200, get(port, "/page.html").getResponseCode());
+            assertEquals(sizes[1], server.cachedBytes());
+            assertEquals(200, get(port, "/book.html").getResponseCode());
+            assertEquals(sizes[0], server.cachedBytes());
+        } finally {
+            server.stop();
+        }
+    }
+
     /**
      * output the html file to check the formal
+     *
+     * @throws IOException
+     *             if the page cannot be read back
      */
     @Test
-    public void testWritePage() {
+    public void testWritePage() throws IOException {
         SimpleWriter out = new SimpleWriter1L("test/Page.html");
         Map<String, String> m = new Map1L<>();
-        m.add("keep", "keep hard");
+        m.add("keep", "keep hard & fast");
         m.add("hard", "hard");
+        Glossary.writeDes(m, "keep");
         Glossary.writePage(out, m, "keep");
 
         out.close();
+        String page = new String(
+                Files.readAllBytes(Paths.get("test/Page.html")),
+                StandardCharsets.UTF_8);
+        assertEquals(true, page.contains("<a href=\"hard.html\">hard</a>"));
+        assertEquals(true, page.contains(" &amp; fast"));
+        assertEquals(false, page.contains("&lt;a"));
     }
 }
@@ -0,0 +1,133 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Counts the words of encoded text directly from its bytes.
+ *
+ * <p>
+ * The text must be in a charset in which the ASCII characters are single
+ * bytes that occur in no other character, such as UTF-8 (see
+ * {@link ParallelCounter#supports(Charset)}); the separators must be ASCII.
+ * The bytes are scanned once: a word made of ASCII bytes is lower-cased and
+ * hashed as it is scanned, with the hash {@code String.hashCode} would give
+ * the lower-cased word, and looked up in the {@link WordCounts} by byte
+ * slice, so a {@code String} is built only the first time the word is seen.
+ * A word with a non-ASCII byte, or every word when the default locale does
+ * not lower-case ASCII letters to ASCII letters, is decoded on its own and
+ * lower-cased with {@code toLowerCase()}. The counts are those of decoding
+ * the whole text and tokenizing it with the same separators.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class ByteCounter {
+
+    /**
+     * Highest ASCII character.
+     */
+    private static final int ASCII = 127;
+
+    /**
+     * separator[b] is true when ASCII byte b is a separator.
+     */
+    private final boolean[] separator = new boolean[ASCII + 1];
+
+    /**
+     * The charset of the text.
+     */
+    private final Charset cs;
+
+    /**
+     * Whether ASCII words may be lower-cased byte by byte.
+     */
+    private final boolean fast;
+
+    /**
+     * Constructor.
+     *
+     * @param tokens
+     *            the tokenizer whose separators split the words
+     * @param cs
+     *            the charset of the text
+     * @requires ParallelCounter.supports(cs)
+     */
+    public ByteCounter(Tokenizer tokens, Charset cs) {
+        for (int b = 0; b <= ASCII; b++) {
+            this.separator[b] = tokens.isSeparator((char) b);
+        }
+        this.cs = cs;
+        String upper = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        this.fast = upper.toLowerCase()
+                .equals(upper.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Reports whether byte b is a separator.
+     *
+     * @param b
+     *            the byte
+     * @return true if b is a separator
+     */
+    public boolean isSeparator(byte b) {
+        return b >= 0 && this.separator[b];
+    }
+
+    /**
+     * Counts the lower-cased words of bytes[start, end) into m.
+     *
+     * @param bytes
+     *            the text
+     * @param start
+     *            index of the first byte
+     * @param end
+     *            index just past the last byte
+     * @param m
+     *            the counts
+     * @updates m
+     */
+    public void count(ByteBuffer bytes, int start, int end, WordCounts m) {
+        int i = start;
+        while (i < end) {
+            while (i < end && this.isSeparator(bytes.get(i))) {
+                i++;
+            }
+            int w = i;
+            int hash = 0;
+            boolean ascii = this.fast;
+            while (i < end && !this.isSeparator(bytes.get(i))) {
+                byte b = bytes.get(i);
+                ascii &= b >= 0;
+                hash = 31 * hash + WordCounts.lower(b);
+                i++;
+            }
+            if (i > w) {
+                if (ascii) {
+                    m.incrementAscii(bytes, w, i, hash);
+                } else {
+                    m.increment(this.decode(bytes, w, i).toLowerCase());
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes bytes[start, end).
+     *
+     * @param bytes
+     *            the text
+     * @param start
+     *            index of the first byte
+     * @param end
+     *            index just past the last byte
+     * @return the decoded text
+     */
+    private String decode(ByteBuffer bytes, int start, int end) {
+        byte[] b = new byte[end - start];
+        for (int k = 0; k < b.length; k++) {
+            b[k] = bytes.get(start + k);
+        }
+        return new String(b, this.cs);
+    }
+
+}
@@ -0,0 +1,373 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Approximate counts of the most frequent words of a stream, in memory fixed
+ * at construction.
+ *
+ * <p>
+ * The candidates are kept in a Space-Saving summary of at most K words: a
+ * word already in the summary has its counter bumped; a new word takes the
+ * counter of the summary's least counted word, inheriting that count as its
+ * error. A word whose true count exceeds total / K is guaranteed to be in
+ * the summary, and its true count lies in [count - error, count]. Every word
+ * is also added to a Count-Min Sketch of D rows of W counters, whose
+ * estimate never falls below the true count and, with probability at least
+ * 1 - e^-D, exceeds it by at most e * total / W. That bound needs the rows
+ * to hash independently, so each row mixes a 64-bit FNV-1a hash of the word
+ * with a seed of its own through the SplitMix64 finalizer; two words that
+ * share a counter in one row are then no likelier to share one in another,
+ * unless their 64-bit hashes are equal. The upper bound reported for a word
+ * is the smaller of the two estimates, the lower bound that of the summary.
+ * The summary is a min-heap in parallel arrays with a map from word to heap
+ * position, so each word costs O(log K) plus D counter updates.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class HeavyHitters {
+
+    /**
+     * Characters read from the stream at a time.
+     */
+    private static final int BUFFER = 1 << 16;
+
+    /**
+     * Odd constant spacing the seeds of the rows.
+     */
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    /**
+     * FNV-1a 64-bit offset basis.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a 64-bit prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The words of the summary, as a heap with the least counted at index 0.
+     */
+    private final String[] words;
+
+    /**
+     * The count of each word of the summary.
+     */
+    private final int[] counts;
+
+    /**
+     * The error of each count of the summary.
+     */
+    private final int[] errors;
+
+    /**
+     * Heap position of each word of the summary.
+     */
+    private final Map<String, Integer> position;
+
+    /**
+     * Number of words in the summary.
+     */
+    private int size;
+
+    /**
+     * The sketch, row after row.
+     */
+    private final int[] sketch;
+
+    /**
+     * Number of counters per row of the sketch, a power of two.
+     */
+    private final int width;
+
+    /**
+     * Number of rows of the sketch.
+     */
+    private final int depth;
+
+    /**
+     * Number of words added.
+     */
+    private long total;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity
+     *            the number K of words kept in the summary
+     * @param width
+     *            the number W of counters per row of the sketch, rounded up
+     *            to a power of two
+     * @param depth
+     *            the number D of rows of the sketch
+     */
+    public HeavyHitters(int capacity, int width, int depth) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        assert width > 0 : "Violation of: width > 0";
+        assert depth > 0 : "Violation of: depth > 0";
+
+        this.words = new String[capacity];
+        this.counts = new int[capacity];
+        this.errors = new int[capacity];
+        this.position = new HashMap<>(2 * capacity);
+        this.width = Integer.highestOneBit(width) == width ? width
+                : Integer.highestOneBit(width) << 1;
+        this.depth = depth;
+        this.sketch = new int[this.width * depth];
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the characters of word.
+     *
+     * @param word
+     *            the word
+     * @return the hash
+     */
+    private static long hash(String word) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < word.length(); i++) {
+            h = (h ^ word.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the counter of row r for a word.
+     *
+     * @param h
+     *            the 64-bit hash of the word
+     * @param r
+     *            the row
+     * @return the index of the counter in the sketch
+     */
+    private int counter(long h, int r) {
+        long x = h + (r + 1) * GOLDEN;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        x ^= x >>> 31;
+        return r * this.width + ((int) x & (this.width - 1));
+    }
+
+    /**
+     * Adds one occurrence of word to the sketch and returns its estimate.
+     *
+     * @param word
+     *            the word
+     * @return the new estimate of the count of word
+     */
+    private int sketchAdd(String word) {
+        long h = hash(word);
+        int min = Integer.MAX_VALUE;
+        for (int r = 0; r < this.depth; r++) {
+            int i = this.counter(h, r);
+            this.sketch[i]++;
+            min = Math.min(min, this.sketch[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the sketch's estimate of the count of word.
+     *
+     * @param word
+     *            the word
+     * @return the estimate, never below the true count
+     */
+    private int sketchCount(String word) {
+        long h = hash(word);
+        int min = Integer.MAX_VALUE;
+        for (int r = 0; r < this.depth; r++) {
+            min = Math.min(min, this.sketch[this.counter(h, r)]);
+        }
+        return min;
+    }
+
+    /**
+     * Moves the word at heap position i down to its place.
+     *
+     * @param i
+     *            the position
+     */
+    private void siftDown(int i) {
+        String w = this.words[i];
+        int c = this.counts[i];
+        int e = this.errors[i];
+        int at = i;
+        boolean placed = false;
+        while (!placed) {
+            int k = 2 * at + 1;
+            if (k + 1 < this.size && this.counts[k + 1] < this.counts[k]) {
+                k++;
+            }
+            if (k < this.size && this.counts[k] < c) {
+                this.words[at] = this.words[k];
+                this.counts[at] = this.counts[k];
+                this.errors[at] = this.errors[k];
+                this.position.put(this.words[at], at);
+                at = k;
+            } else {
+                placed = true;
+            }
+        }
+        this.words[at] = w;
+        this.counts[at] = c;
+        this.errors[at] = e;
+        this.position.put(w, at);
+    }
+
+    /**
+     * Adds one occurrence of word.
+     *
+     * @param word
+     *            the word
+     * @updates this
+     */
+    public void add(String word) {
+        assert word != null : "Violation of: word is not null";
+
+        this.total++;
+        this.sketchAdd(word);
+        Integer p = this.position.get(word);
+        if (p != null) {
+            this.counts[p]++;
+            this.siftDown(p);
+        } else if (this.size < this.words.length) {
+            // counts start at 1, the least possible, so the new leaf is
+            // in place once the leaves above it are not bigger
+            int i = this.size;
+            this.size++;
+            while (i > 0 && this.counts[(i - 1) / 2] > 1) {
+                this.words[i] = this.words[(i - 1) / 2];
+                this.counts[i] = this.counts[(i - 1) / 2];
+                this.errors[i] = this.errors[(i - 1) / 2];
+                this.position.put(this.words[i], i);
+                i = (i - 1) / 2;
+            }
+            this.words[i] = word;
+            this.counts[i] = 1;
+            this.errors[i] = 0;
+            this.position.put(word, i);
+        } else {
+            this.position.remove(this.words[0]);
+            this.words[0] = word;
+            this.errors[0] = this.counts[0];
+            this.counts[0]++;
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Adds the lower-cased words of a stream, reading it in pieces of
+     * {@link #BUFFER} characters so that memory stays bounded however long
+     * the stream and its lines are. A piece is cut after its last separator,
+     * however short the read that ended it, and the rest waits for the next
+     * read or the end of the stream; a word longer than a whole piece is
+     * counted as several words.
+     *
+     * @param in
+     *            the stream, read to its end
+     * @param tokens
+     *            splits the text into words
+     * @throws IOException
+     *             if the stream cannot be read
+     * @updates this
+     */
+    public void read(Reader in, Tokenizer tokens) throws IOException {
+        char[] buf = new char[BUFFER];
+        int len = 0;
+        int r = in.read(buf, len, buf.length - len);
+        while (r >= 0) {
+            len += r;
+            int cut = len;
+            while (cut > 0 && !tokens.isSeparator(buf[cut - 1])) {
+                cut--;
+            }
+            if (cut == 0 && len == buf.length) {
+                cut = len;
+            }
+            CharBuffer text = CharBuffer.wrap(buf, 0, cut);
+            tokens.words(text, (s, e) -> this.add(
+                    text.subSequence(s, e).toString().toLowerCase()));
+            System.arraycopy(buf, cut, buf, 0, len - cut);
+            len -= cut;
+            r = in.read(buf, len, buf.length - len);
+        }
+        CharBuffer rest = CharBuffer.wrap(buf, 0, len);
+        tokens.words(rest, (s, e) -> this
+                .add(rest.subSequence(s, e).toString().toLowerCase()));
+    }
+
+    /**
+     * Returns the number of words added.
+     *
+     * @return the number of words added
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the most the sketch overestimates a count by, with
+     * probability at least 1 - e^-D.
+     *
+     * @return e * total / W, rounded up
+     */
+    public long sketchError() {
+        return (long) Math.ceil(Math.E * this.total / this.width);
+    }
+
+    /**
+     * Returns the upper bound of the count of a word of the summary.
+     *
+     * @param i
+     *            the heap position of the word
+     * @return the smaller of the two estimates
+     */
+    private int upper(int i) {
+        return Math.min(this.counts[i], this.sketchCount(this.words[i]));
+    }
+
+    /**
+     * Returns the lower bound of the count of word.
+     *
+     * @param word
+     *            the word
+     * @return a count the true count of word is at least, 0 if word is not
+     *         in the summary
+     */
+    public int lowerBound(String word) {
+        Integer p = this.position.get(word);
+        return p == null ? 0 : this.counts[p] - this.errors[p];
+    }
+
+    /**
+     * Returns the upper bound of the count of word.
+     *
+     * @param word
+     *            the word
+     * @return a count the true count of word is at most
+     */
+    public int upperBound(String word) {
+        Integer p = this.position.get(word);
+        return p == null ? this.sketchCount(word) : this.upper(p);
+    }
+
+    /**
+     * Reports every word of the summary and the upper bound of its count to
+     * visitor, in no particular order.
+     *
+     * @param visitor
+     *            the visitor
+     */
+    public void forEach(WordCounts.Visitor visitor) {
+        for (int i = 0; i < this.size; i++) {
+            visitor.entry(this.words[i], this.upper(i));
+        }
+    }
+
+}
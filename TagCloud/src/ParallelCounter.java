@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the words of a file on several threads.
+ *
+ * <p>
+ * The file is cut into chunks of about {@link #CHUNK} bytes. A chunk starts
+ * at the first separator at or after its nominal start and ends at the first
+ * separator at or after its nominal end, so no word is split between two
+ * chunks. The separators are ASCII, and an ASCII byte never occurs inside a
+ * multi-byte character of UTF-8 or of a single-byte charset, so each chunk
+ * can be decoded on its own. Each thread takes the next chunk, memory-maps
+ * it, and counts its lower-cased words straight from the bytes with a
+ * {@link ByteCounter} into a table of its own;
+ * the tables are merged once every chunk is counted. The counts are those
+ * of reading the file line by line with the same charset.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class ParallelCounter {
+
+    /**
+     * Nominal size of a chunk, in bytes.
+     */
+    public static final int CHUNK = 8 << 20;
+
+    /**
+     * Bytes mapped at a time while looking for a chunk boundary.
+     */
+    private static final int WINDOW = 1 << 16;
+
+    /**
+     * Highest ASCII character.
+     */
+    private static final int ASCII = 127;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ParallelCounter() {
+    }
+
+    /**
+     * Reports whether the words of a file in charset cs can be counted
+     * chunk by chunk: cs encodes the ASCII characters as single bytes that
+     * occur in no other character.
+     *
+     * @param cs
+     *            the charset
+     * @return true if chunks can be cut at separator bytes
+     */
+    public static boolean supports(Charset cs) {
+        byte[] ascii = new byte[ASCII + 1];
+        for (int i = 0; i <= ASCII; i++) {
+            ascii[i] = (byte) i;
+        }
+        boolean same = Arrays.equals(ascii,
+                new String(ascii, StandardCharsets.US_ASCII).getBytes(cs));
+        return same && (cs.equals(StandardCharsets.UTF_8)
+                || cs.newEncoder().maxBytesPerChar() == 1);
+    }
+
+    /**
+     * Returns the first position at or after p whose byte is a separator.
+     *
+     * @param ch
+     *            the file
+     * @param size
+     *            size of the file
+     * @param p
+     *            the position
+     * @param bytes
+     *            the byte tokenizer
+     * @return the position of the separator, or size if there is none
+     * @throws IOException
+     *             if the file cannot be mapped
+     */
+    private static long boundary(FileChannel ch, long size, long p,
+            ByteCounter bytes) throws IOException {
+        long at = p;
+        boolean found = false;
+        while (at < size && !found) {
+            int len = (int) Math.min(WINDOW, size - at);
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, at,
+                    len);
+            int i = 0;
+            while (i < len && !bytes.isSeparator(b.get(i))) {
+                i++;
+            }
+            found = i < len;
+            at += i;
+        }
+        return at;
+    }
+
+    /**
+     * Counts the words of one chunk into m.
+     *
+     * @param ch
+     *            the file
+     * @param size
+     *            size of the file
+     * @param k
+     *            the index of the chunk
+     * @param bytes
+     *            the byte tokenizer
+     * @param m
+     *            the counts of the thread
+     * @updates m
+     * @throws IOException
+     *             if the chunk cannot be mapped
+     */
+    private static void countChunk(FileChannel ch, long size, int k,
+            ByteCounter bytes, WordCounts m) throws IOException {
+        long start = k == 0 ? 0
+                : boundary(ch, size, (long) k * CHUNK, bytes);
+        long end = boundary(ch, size,
+                Math.min(size, (long) (k + 1) * CHUNK), bytes);
+        if (end > start) {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, start,
+                    end - start);
+            bytes.count(b, 0, b.limit(), m);
+        }
+    }
+
+    /**
+     * Counts the lower-cased words of file on the calling thread, chunk
+     * after chunk.
+     *
+     * @param file
+     *            the input file
+     * @param bytes
+     *            the byte tokenizer
+     * @return the count of each word
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static WordCounts count(Path file, ByteCounter bytes)
+            throws IOException {
+        WordCounts m = new WordCounts();
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = ch.size();
+            int chunks = (int) ((size + CHUNK - 1) / CHUNK);
+            for (int k = 0; k < chunks; k++) {
+                countChunk(ch, size, k, bytes, m);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Counts the lower-cased words of file.
+     *
+     * @param file
+     *            the input file
+     * @param cs
+     *            the charset of file
+     * @param tokens
+     *            splits the text into words
+     * @param threads
+     *            the number of threads, or 0 for one per core
+     * @return the count of each word
+     * @throws IOException
+     *             if the file cannot be read
+     * @requires supports(cs)
+     */
+    public static WordCounts count(Path file, Charset cs,
+            Tokenizer tokens, int threads) throws IOException {
+        assert supports(cs) : "Violation of: supports(cs)";
+        assert threads >= 0 : "Violation of: threads >= 0";
+
+        WordCounts total;
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = ch.size();
+            int chunks = (int) ((size + CHUNK - 1) / CHUNK);
+            int n = Math.max(1, Math.min(chunks, threads > 0 ? threads
+                    : Runtime.getRuntime().availableProcessors()));
+            ByteCounter bytes = new ByteCounter(tokens, cs);
+            AtomicInteger next = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(n);
+            try {
+                List<Future<WordCounts>> parts = new ArrayList<>();
+                for (int t = 0; t < n; t++) {
+                    parts.add(pool.submit(() -> {
+                        WordCounts m = new WordCounts();
+                        int k = next.getAndIncrement();
+                        while (k < chunks) {
+                            countChunk(ch, size, k, bytes, m);
+                            k = next.getAndIncrement();
+                        }
+                        return m;
+                    }));
+                }
+                total = parts.get(0).get();
+                for (int t = 1; t < n; t++) {
+                    total.addAll(parts.get(t).get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while counting", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Error counting words", cause);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        return total;
+    }
+
+}
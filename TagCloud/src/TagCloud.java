@@ -1,18 +1,14 @@
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
 /**
  * This Java program will generate a tag cloud from a given input text. The
@@ -36,121 +32,62 @@ public final class TagCloud {
     static final int BASIC = 11;
 
     /**
-     * Private constructor so this utility class cannot be instantiated.
+     * Splits the input into words and separator strings.
      */
-    private TagCloud() {
-    }
+    private static final Tokenizer TOKENS = new Tokenizer(
+            " \t\n\r,-.!?[]';:/()");
 
     /**
-     * Compare Map's key in number order.
+     * Template of the header; the slots are the number of words and the input
+     * file name, twice.
      */
-    private static class Sort1
-            implements Comparator<Map.Entry<String, Integer>> {
-        @Override
-        public int compare(Map.Entry<String, Integer> o1,
-                Map.Entry<String, Integer> o2) {
-            return o2.getValue() - o1.getValue();
-        }
-    }
+    private static final HtmlTemplate HEADER = HtmlTemplate.compile(""
+            + "<html>\n<head>\n<title>Top {} words in {}</title>\n"
+            + "<link href=\"http://web.cse.ohio-state.edu/software/2231/"
+            + "web-sw2/assignments/projects/tag-cloud-generator/data/"
+            + "tagcloud.css\" rel=\"stylesheet\" type=\"text/css\">\n"
+            + "<link href=\"tagcloud.css\" rel=\"stylesheet\" "
+            + "type=\"text/css\">\n</head>\n<body>\n"
+            + "<h2>Top {} words in {}</h2>\n<hr>\n<div class=\"cdiv\">\n"
+            + "<p class=\"cbox\">\n");
 
     /**
-     * Compare Map's key in lexicographic order.
+     * Template of one word; the slots are the font size, the count and the
+     * word.
      */
-    private static class Sort2
-            implements Comparator<Map.Entry<String, Integer>> {
-
-        @Override
-        public int compare(Map.Entry<String, Integer> o1,
-                Map.Entry<String, Integer> o2) {
-            String s1 = o1.getKey().toLowerCase();
-            String s2 = o2.getKey().toLowerCase();
-            int r = s1.compareTo(s2);
-            if (r == 0) {
-                r = o1.getKey().compareTo(o2.getKey());
-            }
-            return r;
-        }
+    private static final HtmlTemplate WORD = HtmlTemplate
+            .compile("<span style=\"cursor:default\" class=\"f{}\" "
+                    + "title=\"count: {}\">{}</span>\n");
 
-    }
+    /**
+     * Template of one word with approximate counts; the slots are the font
+     * size, the upper and the lower bound of the count, and the word.
+     */
+    private static final HtmlTemplate WORD_BOUNDED = HtmlTemplate
+            .compile("<span style=\"cursor:default\" class=\"f{}\" "
+                    + "title=\"count: at most {}, at least {}\">{}</span>\n");
 
     /**
-     * Generates the set of characters in the given {@code String} into the
-     * given {@code Set}.
-     *
-     * @param str
-     *            the given {@code String}
-     * @param charSet
-     *            the {@code Set} to be replaced
-     * @requires charSet is empty
-     * @ensures charSet = entries(str)
+     * Default number of counters per row of the sketch of the approximate
+     * mode.
      */
-    private static void generateElements(String str, Set<Character> charSet) {
-        assert str != null : "Violation of: str is not null";
-        assert charSet != null : "Violation of: charSet is not null";
-        assert charSet.size() != 0 : "Violation of: charSet is empty";
-
-        for (int i = 0; i < str.length(); i++) {
-            if (!charSet.contains(str.charAt(i))) {
-                charSet.add(str.charAt(i));
-            }
-        }
-    }
+    private static final int WIDTH = 1 << 20;
 
     /**
-     * Returns the first "word" (maximal length string of characters not in
-     * {@code separators}) or "separator string" (maximal length string of
-     * characters in {@code separators}) in the given {@code text} starting at
-     * the given {@code position}.
-     *
-     * @param text
-     *            the {@code String} from which to get the word or separator
-     *            string
-     * @param position
-     *            the starting index
-     * @param separators
-     *            the {@code Set} of separator characters
-     * @return the first word or separator string found in {@code text} starting
-     *         at index {@code position}
-     * @requires 0 <= position < |text|
-     * @ensures <pre>
-     * nextWordOrSeparator =
-     *   text[position, position + |nextWordOrSeparator|)  and
-     * if entries(text[position, position + 1)) intersection separators = {}
-     * then
-     *   entries(nextWordOrSeparator) intersection separators = {}  and
-     *   (position + |nextWordOrSeparator| = |text|  or
-     *    entries(text[position, position + |nextWordOrSeparator| + 1))
-     *      intersection separators /= {})
-     * else
-     *   entries(nextWordOrSeparator) is subset of separators  and
-     *   (position + |nextWordOrSeparator| = |text|  or
-     *    entries(text[position, position + |nextWordOrSeparator| + 1))
-     *      is not subset of separators)
-     * </pre>
+     * Default number of rows of the sketch of the approximate mode.
      */
-    private static String nextWordOrSeparator(String text, int position,
-            Set<Character> separators) {
-        assert text != null : "Violation of: text is not null";
-        assert separators != null : "Violation of: separators is not null";
-        assert 0 <= position : "Violation of: 0 <= position";
-        assert position < text.length() : "Violation of: position < |text|";
-
-        int i = position; //check the length of word or separator
-        String str = ""; //result
-        StringBuilder s = new StringBuilder(str);
-        if (separators.contains(text.charAt(position))) {
-            while (i < text.length() && separators.contains(text.charAt(i))) {
-                s.append(text.charAt(i));
-                i++;
-            }
-        } else {
-            while (i < text.length() && !separators.contains(text.charAt(i))) {
-                s.append(text.charAt(i));
-                i++;
-            }
-        }
-        str = s.toString();
-        return str;
+    private static final int DEPTH = 4;
+
+    /**
+     * Template of the footer.
+     */
+    private static final HtmlTemplate FOOTER = HtmlTemplate
+            .compile("</p>\n</div>\n</body>\n</html>\n");
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private TagCloud() {
     }
 
     /**
@@ -160,36 +97,20 @@ public final class TagCloud {
      * @param input
      *            input stream with the input file
      * @param m
-     *            map which store the word and number of word in input file
-     * @replace m
+     *            table which store the word and number of word in input file
+     * @updates m
      * @requires input is opened
      * @ensures m's keys are words and values are count of words
      */
-    private static void readWord(BufferedReader input, Map<String, Integer> m) {
+    private static void readWord(BufferedReader input, WordCounts m) {
         assert input != null : "Violation of: output must open";
-        /*
-         * Define separator characters
-         */
-        final String sep = " \t\n\r,-.!?[]';:/()"; // separator string
-        Set<Character> s = new HashSet<>(); // the set store the separator
-        generateElements(sep, s);
+
         try {
             String sen = input.readLine();
             while (sen != null) {
-                int position = 0;
-                while (position < sen.length()) {
-                    String tokenWithUpper = nextWordOrSeparator(sen, position,
-                            s);
-                    String token = tokenWithUpper.toLowerCase();
-                    if ((!s.contains(token.charAt(0)))
-                            && !m.containsKey(token)) {
-                        m.put(token, 1);
-                    } else if (!s.contains(token.charAt(0))
-                            && m.containsKey(token)) {
-                        m.replace(token, m.get(token) + 1);
-                    }
-                    position += token.length();
-                }
+                final String line = sen;
+                TOKENS.words(line, (start, end) -> m
+                        .increment(line.substring(start, end).toLowerCase()));
                 try {
                     sen = input.readLine();
                 } catch (IOException e) {
@@ -202,51 +123,64 @@ public final class TagCloud {
     }
 
     /**
-     * Store the Map pair into a sortingMachine and return the maximum counts.
+     * Selects the n words with the highest counts, ties going to the word
+     * first in {@code String.compareTo} order, and returns them in
+     * alphabetical order.
      *
      * @param map
-     *            map which store the word and number of word in input file
+     *            table which store the word and number of word in input file
      * @param n
      *            the number of words to be included in the generated tag cloud
      * @param maxAndMin
      *            The list which contains the maximum counts of words and the
      *            minimum counts of words.(index 0 is maximum and index1 is
      *            minimum)
-     * @return the maximum counts of words
+     * @return the selected words and their counts, in alphabetical order
      * @require map /= null;
      * @replace maxAndMin
      * @ensure sortMap contains all the needs values and follow the order
      */
     private static List<Map.Entry<String, Integer>> sortMap(
-            Map<String, Integer> map, int n, List<Integer> maxAndMin) {
+            WordCounts map, int n, List<Integer> maxAndMin) {
         assert map != null : "Violation of: map /= null";
-        Comparator<Map.Entry<String, Integer>> c1 = new Sort1();
-        Comparator<Map.Entry<String, Integer>> c2 = new Sort2();
-
-        Set<Map.Entry<String, Integer>> s = map.entrySet();
-        List<Map.Entry<String, Integer>> l1 = new ArrayList<>();
-        List<Map.Entry<String, Integer>> l2 = new ArrayList<>();
 
-        for (Entry<String, Integer> x : s) {
-            l1.add(x);
+        TopWords top = new TopWords(n);
+        map.forEach(top::offer);
+        if (top.size() > 0) {
+            maxAndMin.add(top.max());
+            maxAndMin.add(top.min());
         }
-        l1.sort(c1);
-        maxAndMin.add(l1.get(0).getValue());
-        maxAndMin.add(l1.get(n - 1).getValue());
-        for (int i = 0; i < n; i++) {
-            l2.add(l1.get(i));
-        }
-        l2.sort(c2);
-
-        return l2;
+        return top.alphabetical();
+    }
 
+    /**
+     * Returns the value of the command line option {@code -name=value}.
+     *
+     * @param args
+     *            the command line arguments
+     * @param name
+     *            the name of the option
+     * @param otherwise
+     *            the value to use when the option is absent
+     * @return the value of the option, or otherwise
+     */
+    private static String option(String[] args, String name,
+            String otherwise) {
+        String prefix = "-" + name + "=";
+        String value = otherwise;
+        for (String a : args) {
+            if (a.startsWith(prefix)) {
+                value = a.substring(prefix.length());
+            }
+        }
+        return value;
     }
 
     /**
      * Print the header of the html file.
      *
      * @param out
-     *            Output stream for the output file
+     *            buffer receiving the output file
      *
      * @param s
      *            input file name
@@ -254,27 +188,13 @@ public final class TagCloud {
      * @param n
      *            the number of words to be included in the generated tag cloud
      *
-     * @require out is opened
+     * @updates out
      */
-    private static void printUp(PrintWriter out, String s, int n) {
-        assert out != null : "Violation of: out must open";
-
-        out.println("<html>");
-        out.println("<head>");
-        out.print("<title>Top " + n + " words in " + s);
-        out.println("</title>");
-        out.println(
-                "<link href=\"http://web.cse.ohio-state.edu/software/2231/web-sw2/"
-                        + "assignments/projects/tag-cloud-generator/data/tagcloud.css\" "
-                        + "rel=\"stylesheet\" type=\"text/css\">");
-        out.println(
-                "<link href=\"tagcloud.css\" rel=\"stylesheet\" type=\"text/css\">");
-        out.println("</head>");
-        out.println("<body>");
-        out.println("<h2>Top " + n + " words in " + s + "</h2>");
-        out.println("<hr>");
-        out.println("<div class=\"cdiv\">");
-        out.println("<p class=\"cbox\">");
+    private static void printUp(HtmlBuffer out, String s, int n) {
+        assert out != null : "Violation of: out is not null";
+
+        String count = Integer.toString(n);
+        HEADER.render(out, count, s, count, s);
     }
 
     /**
@@ -289,8 +209,11 @@ public final class TagCloud {
      * @return the font size of the counts
      */
     private static int fontSize(int count, List<Integer> maxAndMin) {
-        int r = SIZE * (count - maxAndMin.get(1))
-                / (maxAndMin.get(0) - maxAndMin.get(1));
+        int range = maxAndMin.get(0) - maxAndMin.get(1);
+        int r = SIZE;
+        if (range > 0) {
+            r = SIZE * (count - maxAndMin.get(1)) / range;
+        }
         return BASIC + r;
     }
 
@@ -298,46 +221,204 @@ public final class TagCloud {
      * Print the table of the html file and the footer.
      *
      * @param out
-     *            Output stream for the output file
+     *            buffer receiving the output file
      * @param s
      *            SortingMachine which store all values
      * @param maxAndMin
      *            The list which contains the maximum counts of words and the
      *            minimum counts of words.(index 0 is maximum and index1 is
      *            minimum)
-     * @require out is opened
+     * @param bounds
+     *            the approximate counts the counts of s are upper bounds
+     *            from, or null if the counts are exact
+     * @updates out
      */
-    private static void printUn(PrintWriter out,
-            List<Map.Entry<String, Integer>> s, List<Integer> maxAndMin) {
-        assert out != null : "Violation of: out must open";
+    private static void printUn(HtmlBuffer out,
+            List<Map.Entry<String, Integer>> s, List<Integer> maxAndMin,
+            HeavyHitters bounds) {
+        assert out != null : "Violation of: out is not null";
 
-        while (s.size() > 0) {
-            Map.Entry<String, Integer> m = s.remove(0);
+        for (Map.Entry<String, Integer> m : s) {
             int i = fontSize(m.getValue(), maxAndMin);
-            out.println("<span style=\"cursor:default\" class=\"f" + i
-                    + "\" title=\"count: " + m.getValue() + "\">" + m.getKey()
-                    + "</span>");
+            if (bounds == null) {
+                WORD.fragment(out, 0);
+                out.raw(i);
+                WORD.fragment(out, 1);
+                out.raw(m.getValue());
+                WORD.fragment(out, 2);
+                out.escaped(m.getKey());
+                WORD.fragment(out, 3);
+            } else {
+                WORD_BOUNDED.fragment(out, 0);
+                out.raw(i);
+                WORD_BOUNDED.fragment(out, 1);
+                out.raw(m.getValue());
+                WORD_BOUNDED.fragment(out, 2);
+                out.raw(bounds.lowerBound(m.getKey()));
+                WORD_BOUNDED.fragment(out, 3);
+                out.escaped(m.getKey());
+                WORD_BOUNDED.fragment(out, 4);
+            }
         }
-        out.println("</p>");
-        out.println("</div>");
-        out.println("</body>");
-        out.println("</html>");
+        FOOTER.fragment(out, 0);
+    }
+
+    /**
+     * Returns the tag cloud of the n words of m with the highest counts.
+     *
+     * @param name
+     *            the name of the input, shown in the heading
+     * @param m
+     *            the counts of the words
+     * @param n
+     *            the number of words to be included in the generated tag cloud
+     * @param bounds
+     *            the approximate counts m holds upper bounds from, or null if
+     *            the counts of m are exact
+     * @return the html page
+     */
+    static HtmlBuffer page(String name, WordCounts m, int n,
+            HeavyHitters bounds) {
+        List<Integer> maxAndMin = new ArrayList<>();
+        List<Map.Entry<String, Integer>> sort = sortMap(m, n, maxAndMin);
+        HtmlBuffer page = new HtmlBuffer();
+        printUp(page, name, n);
+        printUn(page, sort, maxAndMin, bounds);
+        return page;
     }
 
     /**
      * Main method.
      *
+     * <p>
+     * Options: {@code -threads=N} counts the words with
+     * {@code ParallelCounter} on N threads ({@code 0} means one per core)
+     * instead of reading the input line by line; the counts are the same.
+     * {@code -approximate=K} counts in fixed memory with
+     * {@code HeavyHitters}, keeping K candidate words and a sketch of
+     * {@code -depth=D} rows of {@code -width=W} counters; each word of the
+     * cloud then shows the bounds of its count. {@code -in=FILE} skips the
+     * prompts and writes the cloud of the {@code -n=N} most frequent words of
+     * FILE into the file {@code -out=FILE}; FILE {@code -} is standard
+     * input, which nothing else then reads, so a stream of any length can be
+     * counted with {@code -approximate}. {@code -corpus=PATH}, where PATH is
+     * a folder or a glob such as {@code data/*.txt}, skips the prompts and
+     * writes a cloud of the {@code -n=N} most frequent words of each file,
+     * and one of the whole corpus, into the folder {@code -out=FOLDER} with
+     * {@code TagCloudCorpus}.
+     *
      * @param args
      *            the command line arguments
      */
     public static void main(String[] args) {
+        String corpus = option(args, "corpus", null);
+        String file = option(args, "in", null);
+        if (file != null) {
+            single(args, file);
+        } else if (corpus != null) {
+            try {
+                List<TagCloudCorpus.Summary> done = TagCloudCorpus.run(corpus,
+                        Paths.get(option(args, "out", ".")),
+                        Integer.parseInt(option(args, "n", "100")),
+                        Integer.parseInt(option(args, "threads", "0")),
+                        TOKENS, Charset.defaultCharset());
+                for (TagCloudCorpus.Summary f : done) {
+                    System.out.println(f.toString());
+                }
+                // once every file is reported
+                BatchJob.rethrowErrors(done);
+            } catch (IOException e) {
+                System.err.println("Error reading corpus " + e);
+            }
+        } else {
+            prompt(args);
+        }
+    }
+
+    /**
+     * Counts the words of an input and writes its tag cloud.
+     *
+     * @param s
+     *            the name of the input, shown in the heading
+     * @param input
+     *            the input
+     * @param mapped
+     *            whether s names a file that may be read again by name
+     * @param output
+     *            the output file
+     * @param n
+     *            the number of words to be included in the tag cloud
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if the input cannot be read or the cloud written
+     */
+    private static void cloud(String s, BufferedReader input, boolean mapped,
+            FileChannel output, int n, String[] args) throws IOException {
+        WordCounts m = new WordCounts();
+        String threads = option(args, "threads", null);
+        String approximate = option(args, "approximate", null);
+        Charset cs = Charset.defaultCharset();
+        HeavyHitters bounds = null;
+        if (approximate != null) {
+            bounds = new HeavyHitters(
+                    Math.max(n, Integer.parseInt(approximate)),
+                    Integer.parseInt(
+                            option(args, "width", Integer.toString(WIDTH))),
+                    Integer.parseInt(
+                            option(args, "depth", Integer.toString(DEPTH))));
+            bounds.read(input, TOKENS);
+            bounds.forEach(m::add);
+        } else if (threads != null && mapped
+                && ParallelCounter.supports(cs)) {
+            m = ParallelCounter.count(Paths.get(s), cs, TOKENS,
+                    Integer.parseInt(threads));
+        } else {
+            readWord(input, m);
+        }
+        page(s, m, n, bounds).writeTo(output);
+    }
+
+    /**
+     * Writes the tag cloud of the input named by {@code -in=FILE}, without
+     * prompts.
+     *
+     * @param args
+     *            the command line arguments
+     * @param s
+     *            the input file, or {@code -} for standard input
+     */
+    private static void single(String[] args, String s) {
+        boolean stdin = "-".equals(s);
+        int n = Integer.parseInt(option(args, "n", "100"));
+        String out = option(args, "out", stdin ? "stdin.html" : s + ".html");
+        try (BufferedReader input = new BufferedReader(stdin
+                ? new InputStreamReader(System.in)
+                : new FileReader(s));
+                FileChannel output = FileChannel.open(Paths.get(out),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            cloud(s, input, !stdin, output, n, args);
+        } catch (IOException e) {
+            System.err.println("Error writing tag cloud " + e);
+        }
+    }
+
+    /**
+     * Asks for the input file, the output file and the number of words, and
+     * writes the tag cloud.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    private static void prompt(String[] args) {
 
         BufferedReader in;
         BufferedReader input;
-        PrintWriter output;
+        FileChannel output;
 
         String s;
-        Map<String, Integer> m = new HashMap<>();
         int n = 0;
 
         System.out.println(
@@ -351,8 +432,10 @@ public final class TagCloud {
                 System.out.println(
                         "please enter the name of the input file(text file): ");
                 //test/importanceOut.html
-                output = new PrintWriter(
-                        new BufferedWriter(new FileWriter(in.readLine())));
+                output = FileChannel.open(Paths.get(in.readLine()),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
                 try {
                     System.out.println(
                             "please enter the number of words to be included "
@@ -360,12 +443,7 @@ public final class TagCloud {
                     //n=100
                     n = Integer.parseInt(in.readLine());
                     assert n >= 0 : "The number of words should be positive";
-                    readWord(input, m);
-                    List<Integer> maxAndMin = new ArrayList<>();
-                    List<Map.Entry<String, Integer>> sort = sortMap(m, n,
-                            maxAndMin);
-                    printUp(output, s, n);
-                    printUn(output, sort, maxAndMin);
+                    cloud(s, input, true, output, n, args);
                     try {
                         input.close();
                         output.close();
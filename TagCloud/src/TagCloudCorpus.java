@@ -0,0 +1,387 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds the tag clouds of many files in one run: one cloud per file and one
+ * of the whole corpus.
+ *
+ * <p>
+ * The corpus is the regular files of a folder, or the files matching a glob
+ * such as {@code data/*.txt}, whose wildcards may only be in the last name
+ * of the path; the clouds a run writes into its output folder are never part
+ * of the corpus of a later run. Every file is counted once, as a job of a
+ * {@code BatchJob} batch; its cloud is written as soon as it is counted, and
+ * its counts are then merged into the counts of the corpus, so only the
+ * files being counted are held in memory. The
+ * counts of the corpus are split into {@link #STRIPES} tables by the hash of
+ * the word, each with a lock of its own: a file's words are first grouped by
+ * stripe, then each group is added under one lock, the stripes being taken
+ * in a different order by each file, so threads merging small files rarely
+ * wait for one another.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class TagCloudCorpus {
+
+    /**
+     * Number of stripes of the counts of the corpus, a power of two.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * Name of the cloud of the whole corpus.
+     */
+    private static final String AGGREGATE = "index.html";
+
+    /**
+     * What was done with one file.
+     */
+    public static final class Summary extends BatchJob {
+
+        /**
+         * The input file.
+         */
+        private final Path input;
+
+        /**
+         * The cloud written.
+         */
+        private final Path output;
+
+        /**
+         * The corpus the file belongs to.
+         */
+        private final TagCloudCorpus corpus;
+
+        /**
+         * Number of distinct words in the file.
+         */
+        private int words;
+
+        /**
+         * Constructor.
+         *
+         * @param input
+         *            the input file
+         * @param output
+         *            the cloud to write
+         * @param corpus
+         *            the corpus the file belongs to
+         */
+        Summary(Path input, Path output, TagCloudCorpus corpus) {
+            this.input = input;
+            this.output = output;
+            this.corpus = corpus;
+        }
+
+        /**
+         * Counts the file, writes its cloud and merges its counts into
+         * those of the corpus.
+         */
+        @Override
+        protected void work() throws IOException {
+            if (this.output.getFileName().toString().equals(AGGREGATE)) {
+                throw new IOException(
+                        this.output + " is the cloud of the corpus");
+            }
+            WordCounts m = this.corpus.count(this.input);
+            this.words = m.size();
+            write(this.output, TagCloud.page(
+                    this.input.getFileName().toString(), m, this.corpus.n,
+                    null));
+            this.corpus.merge(m);
+        }
+
+        @Override
+        protected long size() {
+            return this.input.toFile().length();
+        }
+
+        /**
+         * Returns the number of distinct words in the file.
+         *
+         * @return the number of words
+         */
+        public int words() {
+            return this.words;
+        }
+
+        @Override
+        public String toString() {
+            return this.input + " -> " + this.output + ": "
+                    + this.outcome(this.words + " words");
+        }
+    }
+
+    /**
+     * The counts of the corpus, by stripe.
+     */
+    private final WordCounts[] stripes = new WordCounts[STRIPES];
+
+    /**
+     * Number of words in each cloud.
+     */
+    private final int n;
+
+    /**
+     * Splits the text into words.
+     */
+    private final Tokenizer tokens;
+
+    /**
+     * The charset of the files.
+     */
+    private final Charset cs;
+
+    /**
+     * Counts the words from the bytes of a file, or null if the charset
+     * does not allow it.
+     */
+    private final ByteCounter bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param n
+     *            the number of words in each cloud
+     * @param tokens
+     *            splits the text into words
+     * @param cs
+     *            the charset of the files
+     */
+    private TagCloudCorpus(int n, Tokenizer tokens, Charset cs) {
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new WordCounts();
+        }
+        this.n = n;
+        this.tokens = tokens;
+        this.cs = cs;
+        this.bytes = ParallelCounter.supports(cs) ? new ByteCounter(tokens, cs)
+                : null;
+    }
+
+    /**
+     * Returns the files of a corpus.
+     *
+     * @param pattern
+     *            a folder, or a glob in the last name of a path
+     * @return the regular files of the folder or matching the glob, in
+     *         order of name
+     * @throws IOException
+     *             if the folder cannot be listed
+     */
+    public static List<Path> files(String pattern) throws IOException {
+        Path dir;
+        String glob;
+        int slash = Math.max(pattern.lastIndexOf('/'),
+                pattern.lastIndexOf(File.separatorChar));
+        if (Files.isDirectory(Paths.get(pattern))) {
+            dir = Paths.get(pattern);
+            glob = "*";
+        } else if (slash < 0) {
+            dir = Paths.get(".");
+            glob = pattern;
+        } else {
+            dir = Paths.get(slash == 0 ? "/" : pattern.substring(0, slash));
+            glob = pattern.substring(slash + 1);
+        }
+        PathMatcher matcher = FileSystems.getDefault()
+                .getPathMatcher("glob:" + glob);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                if (Files.isRegularFile(p)
+                        && matcher.matches(p.getFileName())) {
+                    files.add(p);
+                }
+            }
+        }
+        files.sort(Comparator.naturalOrder());
+        return files;
+    }
+
+    /**
+     * Reports whether file is a cloud an earlier run wrote into out: the
+     * cloud of the corpus, or the cloud of another file of the corpus.
+     *
+     * @param file
+     *            a file of the corpus
+     * @param out
+     *            the output folder
+     * @param files
+     *            the files of the corpus
+     * @return true if file was written by a run into out
+     * @throws IOException
+     *             if the folders cannot be compared
+     */
+    private static boolean generated(Path file, Path out, List<Path> files)
+            throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        String name = file.getFileName().toString();
+        return dir != null && Files.isSameFile(dir, out)
+                && (name.equals(AGGREGATE) || (name.endsWith(".html")
+                        && files.contains(file.resolveSibling(name.substring(0,
+                                name.length() - ".html".length())))));
+    }
+
+    /**
+     * Returns the stripe of word.
+     *
+     * @param word
+     *            the word
+     * @return the index of the stripe
+     */
+    private static int stripe(String word) {
+        return (word.hashCode() * 0x9E3779B9) >>> (Integer.SIZE
+                - Integer.numberOfTrailingZeros(STRIPES));
+    }
+
+    /**
+     * Counts the lower-cased words of file.
+     *
+     * @param file
+     *            the file
+     * @return the count of each word
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private WordCounts count(Path file) throws IOException {
+        WordCounts m;
+        if (this.bytes != null) {
+            m = ParallelCounter.count(file, this.bytes);
+        } else {
+            m = new WordCounts();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    Files.newInputStream(file), this.cs))) {
+                String line = in.readLine();
+                while (line != null) {
+                    final String l = line;
+                    this.tokens.words(l, (s, e) -> m
+                            .increment(l.substring(s, e).toLowerCase()));
+                    line = in.readLine();
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Adds the counts of one file to those of the corpus.
+     *
+     * @param m
+     *            the counts of the file
+     * @updates this
+     */
+    private void merge(WordCounts m) {
+        // group the words by stripe, as a counting sort
+        String[] words = new String[m.size()];
+        int[] counts = new int[m.size()];
+        int[] start = new int[STRIPES + 1];
+        m.forEach((w, c) -> start[stripe(w) + 1]++);
+        for (int s = 0; s < STRIPES; s++) {
+            start[s + 1] += start[s];
+        }
+        int[] next = start.clone();
+        m.forEach((w, c) -> {
+            int i = next[stripe(w)]++;
+            words[i] = w;
+            counts[i] = c;
+        });
+        int first = System.identityHashCode(m);
+        for (int k = 0; k < STRIPES; k++) {
+            int s = (first + k) & (STRIPES - 1);
+            if (start[s] < start[s + 1]) {
+                WordCounts stripe = this.stripes[s];
+                synchronized (stripe) {
+                    for (int i = start[s]; i < start[s + 1]; i++) {
+                        stripe.add(words[i], counts[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a page.
+     *
+     * @param file
+     *            the file to write
+     * @param page
+     *            the page
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void write(Path file, HtmlBuffer page) throws IOException {
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            page.writeTo(ch);
+        }
+    }
+
+    /**
+     * Writes the cloud of each file of a corpus, named after the file with
+     * {@code .html} appended, and the cloud of the whole corpus, named
+     * {@value #AGGREGATE}. The clouds found in out are left out of the
+     * corpus, and a file whose cloud would be named {@value #AGGREGATE}
+     * fails.
+     *
+     * @param pattern
+     *            a folder, or a glob in the last name of a path
+     * @param out
+     *            the output folder, created if missing
+     * @param n
+     *            the number of words in each cloud
+     * @param threads
+     *            the number of threads, or 0 for one per core
+     * @param tokens
+     *            splits the text into words
+     * @param cs
+     *            the charset of the files
+     * @return a summary for each file, in order of name
+     * @throws IOException
+     *             if the corpus cannot be listed or the cloud of the corpus
+     *             cannot be written
+     */
+    public static List<Summary> run(String pattern, Path out, int n,
+            int threads, Tokenizer tokens, Charset cs) throws IOException {
+        assert n >= 0 : "Violation of: n >= 0";
+        assert threads >= 0 : "Violation of: threads >= 0";
+
+        TagCloudCorpus corpus = new TagCloudCorpus(n, tokens, cs);
+        Files.createDirectories(out);
+        List<Summary> files = new ArrayList<>();
+        List<Path> inputs = files(pattern);
+        for (Path p : inputs) {
+            if (!generated(p, out, inputs)) {
+                files.add(new Summary(p,
+                        out.resolve(p.getFileName() + ".html"), corpus));
+            }
+        }
+        BatchJob.runAll(files, threads);
+        // the stripes hold disjoint words
+        WordCounts all = new WordCounts();
+        for (WordCounts stripe : corpus.stripes) {
+            all.addAll(stripe);
+        }
+        write(out.resolve(AGGREGATE), TagCloud.page(pattern, all, n, null));
+        return files;
+    }
+
+}
@@ -0,0 +1,183 @@
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the N words with the highest counts without sorting the whole
+ * vocabulary.
+ *
+ * <p>
+ * The selected words are kept in a min-heap of at most N entries, stored in
+ * two parallel arrays (words and primitive counts), whose root is the worst
+ * selected word. Offering a word costs one comparison with the root when it
+ * does not make the cut, and O(log N) when it does, so selecting from a
+ * vocabulary of V words costs O(V log N). Ties are broken by the word:
+ * between two words with the same count the smaller one in
+ * {@code String.compareTo} order wins, so the selection does not depend on
+ * the order the words are offered in. The lower-case sort keys of the
+ * alphabetical layout are computed once per selected word.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class TopWords {
+
+    /**
+     * The selected words, as a heap with the worst at index 0.
+     */
+    private final String[] words;
+
+    /**
+     * The count of each selected word.
+     */
+    private final int[] counts;
+
+    /**
+     * Number of selected words.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param n
+     *            the number of words to select
+     */
+    public TopWords(int n) {
+        assert n >= 0 : "Violation of: n >= 0";
+
+        this.words = new String[n];
+        this.counts = new int[n];
+    }
+
+    /**
+     * Reports whether the entry (w1, c1) ranks below (w2, c2).
+     *
+     * @param w1
+     *            the first word
+     * @param c1
+     *            the count of the first word
+     * @param w2
+     *            the second word
+     * @param c2
+     *            the count of the second word
+     * @return true if the first entry is worse
+     */
+    private static boolean worse(String w1, int c1, String w2, int c2) {
+        return c1 < c2 || (c1 == c2 && w1.compareTo(w2) > 0);
+    }
+
+    /**
+     * Offers a word to the selection.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            the count of word
+     * @requires word was not offered before
+     */
+    public void offer(String word, int count) {
+        if (this.size < this.words.length) {
+            // sift up from the new leaf
+            int i = this.size;
+            this.size++;
+            while (i > 0 && worse(word, count, this.words[(i - 1) / 2],
+                    this.counts[(i - 1) / 2])) {
+                this.words[i] = this.words[(i - 1) / 2];
+                this.counts[i] = this.counts[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            this.words[i] = word;
+            this.counts[i] = count;
+        } else if (this.size > 0
+                && worse(this.words[0], this.counts[0], word, count)) {
+            // replace the root and sift down
+            int i = 0;
+            boolean placed = false;
+            while (!placed) {
+                int c = 2 * i + 1;
+                if (c + 1 < this.size && worse(this.words[c + 1],
+                        this.counts[c + 1], this.words[c], this.counts[c])) {
+                    c++;
+                }
+                if (c < this.size && worse(this.words[c], this.counts[c],
+                        word, count)) {
+                    this.words[i] = this.words[c];
+                    this.counts[i] = this.counts[c];
+                    i = c;
+                } else {
+                    placed = true;
+                }
+            }
+            this.words[i] = word;
+            this.counts[i] = count;
+        }
+    }
+
+    /**
+     * Returns the number of selected words.
+     *
+     * @return min(N, number of words offered)
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the highest count of the selected words.
+     *
+     * @return the highest count
+     * @requires size() > 0
+     */
+    public int max() {
+        assert this.size > 0 : "Violation of: size() > 0";
+
+        int max = this.counts[0];
+        for (int i = 1; i < this.size; i++) {
+            max = Math.max(max, this.counts[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the lowest count of the selected words.
+     *
+     * @return the lowest count
+     * @requires size() > 0
+     */
+    public int min() {
+        assert this.size > 0 : "Violation of: size() > 0";
+
+        return this.counts[0];
+    }
+
+    /**
+     * Returns the selected words in alphabetical order, ignoring case, then
+     * in {@code String.compareTo} order.
+     *
+     * @return the selected words and their counts
+     */
+    public List<Map.Entry<String, Integer>> alphabetical() {
+        String[] keys = new String[this.size];
+        Integer[] order = new Integer[this.size];
+        for (int i = 0; i < this.size; i++) {
+            keys[i] = this.words[i].toLowerCase();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int r = keys[a].compareTo(keys[b]);
+            if (r == 0) {
+                r = this.words[a].compareTo(this.words[b]);
+            }
+            return r;
+        });
+        List<Map.Entry<String, Integer>> l = new ArrayList<>(this.size);
+        for (int i : order) {
+            l.add(new SimpleImmutableEntry<>(this.words[i], this.counts[i]));
+        }
+        return l;
+    }
+
+}
@@ -0,0 +1,301 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Counts of words, kept in an open-addressing hash table with primitive
+ * counts.
+ *
+ * <p>
+ * The table is three parallel arrays: the words, their mixed hash codes and
+ * their counts. A word lives in the first free slot at or after its home
+ * slot (linear probing), and the stored hash codes let a probe skip the
+ * {@code equals} call on every slot but the one holding the word, so adding
+ * to a count is a single probe sequence and allocates nothing once the word
+ * is in the table. The table is at most half full, so probe sequences stay
+ * short; it doubles when it would fill further.
+ *
+ * @author Bowei Kou
+ *
+ */
+public final class WordCounts {
+
+    /**
+     * Receives the words of a table and their counts.
+     */
+    public interface Visitor {
+
+        /**
+         * Called once for each word.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            the count of word
+         */
+        void entry(String word, int count);
+    }
+
+    /**
+     * Default number of slots.
+     */
+    private static final int INITIAL = 64;
+
+    /**
+     * The words, null for a free slot.
+     */
+    private String[] words;
+
+    /**
+     * The mixed hash code of the word in each slot.
+     */
+    private int[] hashes;
+
+    /**
+     * The count of the word in each slot.
+     */
+    private int[] counts;
+
+    /**
+     * Number of words.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public WordCounts() {
+        this.allocate(INITIAL);
+    }
+
+    /**
+     * Allocates an empty table.
+     *
+     * @param slots
+     *            the number of slots, a power of two
+     */
+    private void allocate(int slots) {
+        this.words = new String[slots];
+        this.hashes = new int[slots];
+        this.counts = new int[slots];
+        this.size = 0;
+    }
+
+    /**
+     * Spreads the bits of a hash code so that similar words get distant
+     * home slots.
+     *
+     * @param h
+     *            the hash code
+     * @return the mixed hash code
+     */
+    private static int mix(int h) {
+        int x = h * 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+
+    /**
+     * Returns the slot holding word, or the free slot it would go to.
+     *
+     * @param word
+     *            the word
+     * @param h
+     *            the mixed hash code of word
+     * @return the slot
+     */
+    private int slot(String word, int h) {
+        int mask = this.words.length - 1;
+        int i = h & mask;
+        while (this.words[i] != null
+                && !(this.hashes[i] == h && this.words[i].equals(word))) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Doubles the number of slots.
+     */
+    private void grow() {
+        String[] oldWords = this.words;
+        int[] oldHashes = this.hashes;
+        int[] oldCounts = this.counts;
+        int n = this.size;
+        this.allocate(2 * oldWords.length);
+        int mask = this.words.length - 1;
+        for (int j = 0; j < oldWords.length; j++) {
+            if (oldWords[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (this.words[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                this.words[i] = oldWords[j];
+                this.hashes[i] = oldHashes[j];
+                this.counts[i] = oldCounts[j];
+            }
+        }
+        this.size = n;
+    }
+
+    /**
+     * Adds n to the count of word.
+     *
+     * @param word
+     *            the word
+     * @param n
+     *            the amount to add
+     * @return the new count of word
+     * @updates this
+     */
+    public int add(String word, int n) {
+        assert word != null : "Violation of: word is not null";
+
+        int h = mix(word.hashCode());
+        int i = this.slot(word, h);
+        int c;
+        if (this.words[i] == null) {
+            this.words[i] = word;
+            this.hashes[i] = h;
+            this.counts[i] = n;
+            this.size++;
+            c = n;
+            if (2 * this.size > this.words.length) {
+                this.grow();
+            }
+        } else {
+            this.counts[i] += n;
+            c = this.counts[i];
+        }
+        return c;
+    }
+
+    /**
+     * Adds one to the count of the lower case of an ASCII word given as
+     * bytes, building a {@code String} only if the word is new.
+     *
+     * @param bytes
+     *            the bytes
+     * @param start
+     *            index of the first byte of the word
+     * @param end
+     *            index just past the last byte of the word
+     * @param hash
+     *            the {@code hashCode} of the lower-cased word
+     * @updates this
+     * @requires bytes[start, end) is ASCII
+     */
+    public void incrementAscii(ByteBuffer bytes, int start, int end,
+            int hash) {
+        int h = mix(hash);
+        int len = end - start;
+        int mask = this.words.length - 1;
+        int i = h & mask;
+        while (this.words[i] != null && !(this.hashes[i] == h
+                && sameAscii(this.words[i], bytes, start, len))) {
+            i = (i + 1) & mask;
+        }
+        if (this.words[i] == null) {
+            byte[] lower = new byte[len];
+            for (int k = 0; k < len; k++) {
+                lower[k] = (byte) lower(bytes.get(start + k));
+            }
+            this.add(new String(lower, StandardCharsets.US_ASCII), 1);
+        } else {
+            this.counts[i]++;
+        }
+    }
+
+    /**
+     * Returns the lower case of an ASCII character.
+     *
+     * @param b
+     *            the character
+     * @return b in lower case
+     */
+    static int lower(int b) {
+        int c = b;
+        if (c >= 'A' && c <= 'Z') {
+            c += 'a' - 'A';
+        }
+        return c;
+    }
+
+    /**
+     * Reports whether word is the lower case of bytes[start, start + len).
+     *
+     * @param word
+     *            the word
+     * @param bytes
+     *            the bytes
+     * @param start
+     *            index of the first byte
+     * @param len
+     *            the number of bytes
+     * @return true if they are the same
+     */
+    private static boolean sameAscii(String word, ByteBuffer bytes,
+            int start, int len) {
+        boolean same = word.length() == len;
+        for (int k = 0; same && k < len; k++) {
+            same = word.charAt(k) == lower(bytes.get(start + k));
+        }
+        return same;
+    }
+
+    /**
+     * Adds one to the count of word.
+     *
+     * @param word
+     *            the word
+     * @updates this
+     */
+    public void increment(String word) {
+        this.add(word, 1);
+    }
+
+    /**
+     * Returns the count of word.
+     *
+     * @param word
+     *            the word
+     * @return the count of word, 0 if it was never added
+     */
+    public int count(String word) {
+        int i = this.slot(word, mix(word.hashCode()));
+        return this.words[i] == null ? 0 : this.counts[i];
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Adds every count of other to this.
+     *
+     * @param other
+     *            the counts to add
+     * @updates this
+     */
+    public void addAll(WordCounts other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Reports every word and its count to visitor, in no particular order.
+     *
+     * @param visitor
+     *            the visitor
+     */
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < this.words.length; i++) {
+            if (this.words[i] != null) {
+                visitor.entry(this.words[i], this.counts[i]);
+            }
+        }
+    }
+
+}
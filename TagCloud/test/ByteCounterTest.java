@@ -0,0 +1,85 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author Bowei Kou
+ */
+
+public class ByteCounterTest {
+
+    /**
+     * Counts the words of bytes[start, end) of the UTF-8 encoding of text
+     * and checks them against the decoded tokenization of the same bytes.
+     *
+     * @param text
+     *            the text
+     * @param start
+     *            the first byte counted
+     * @param end
+     *            the byte after the last one counted
+     * @return the counts
+     */
+    private static WordCounts check(String text, int start, int end) {
+        byte[] b = text.getBytes(StandardCharsets.UTF_8);
+        WordCounts counts = new WordCounts();
+        new ByteCounter(ExpectedCounts.TOKENS, StandardCharsets.UTF_8)
+                .count(ByteBuffer.wrap(b), start, end, counts);
+        ExpectedCounts.check(ExpectedCounts.of(
+                new String(b, start, end - start, StandardCharsets.UTF_8)),
+                counts);
+        return counts;
+    }
+
+    /**
+     * test mixed-case ASCII words with separators at both edges.
+     */
+    @Test
+    public void testAscii() {
+        String text = " (The) cat, THE dog; the END.\n";
+        WordCounts counts = check(text, 0, text.length());
+        assertEquals(3, counts.count("the"));
+        assertEquals(1, counts.count("end"));
+    }
+
+    /**
+     * test words with multi-byte characters, next to ASCII ones.
+     */
+    @Test
+    public void testNonAscii() {
+        String text = "Caf\u00e9 cafe CAF\u00c9 \u00e9t\u00e9-\u00c9T\u00c9"
+                + " stra\u00dfe";
+        WordCounts counts = check(text, 0,
+                text.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(2, counts.count("caf\u00e9"));
+        assertEquals(2, counts.count("\u00e9t\u00e9"));
+        assertEquals(1, counts.count("cafe"));
+    }
+
+    /**
+     * test counting a range that starts and ends inside the buffer.
+     */
+    @Test
+    public void testRange() {
+        String text = "skip these words. Alpha beta alpha. not these";
+        int start = text.indexOf('.') + 1;
+        int end = text.lastIndexOf('.') + 1;
+        WordCounts counts = check(text, start, end);
+        assertEquals(2, counts.count("alpha"));
+        assertEquals(0, counts.count("skip"));
+        assertEquals(0, counts.count("these"));
+    }
+
+    /**
+     * test a range of separators only, and an empty range.
+     */
+    @Test
+    public void testNoWords() {
+        assertEquals(0, check(" ,.; \n", 0, 6).size());
+        assertEquals(0, check("word", 2, 2).size());
+    }
+
+}
@@ -0,0 +1,58 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The word counts the TagCloud tests expect, computed one word at a time.
+ *
+ * @author Bowei Kou
+ */
+
+public final class ExpectedCounts {
+
+    /**
+     * Splits the text into words, as TagCloud does.
+     */
+    public static final Tokenizer TOKENS = new Tokenizer(
+            " \t\n\r,-.!?[]';:/()");
+
+    /**
+     * No instances.
+     */
+    private ExpectedCounts() {
+    }
+
+    /**
+     * Returns the counts of the lower-cased words of text, one word at a
+     * time.
+     *
+     * @param text
+     *            the text
+     * @return the count of each word
+     */
+    public static Map<String, Integer> of(String text) {
+        Map<String, Integer> m = new HashMap<>();
+        TOKENS.words(text, (s, e) -> m
+                .merge(text.substring(s, e).toLowerCase(), 1, Integer::sum));
+        return m;
+    }
+
+    /**
+     * Checks that counts match the expected ones.
+     *
+     * @param expected
+     *            the expected counts
+     * @param counts
+     *            the counts
+     */
+    public static void check(Map<String, Integer> expected,
+            WordCounts counts) {
+        assertEquals(expected.size(), counts.size());
+        for (Map.Entry<String, Integer> e : expected.entrySet()) {
+            assertEquals(e.getKey(), (int) e.getValue(),
+                    counts.count(e.getKey()));
+        }
+    }
+
+}
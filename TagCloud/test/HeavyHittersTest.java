@@ -0,0 +1,113 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Bowei Kou
+ */
+
+public class HeavyHittersTest {
+
+    /**
+     * test that the counts are exact while the summary has room.
+     */
+    @Test
+    public void testExact() {
+        HeavyHitters h = new HeavyHitters(4, 64, 4);
+        for (String w : "a b a c a b".split(" ")) {
+            h.add(w);
+        }
+        assertEquals(6, h.total());
+        assertEquals(3, h.lowerBound("a"));
+        assertEquals(3, h.upperBound("a"));
+        assertEquals(2, h.upperBound("b"));
+        assertEquals(0, h.lowerBound("z"));
+    }
+
+    /**
+     * test that the bounds hold on a skewed stream too long for the summary.
+     */
+    @Test
+    public void testBounds() {
+        final int k = 20;
+        HeavyHitters h = new HeavyHitters(k, 1 << 10, 4);
+        Map<String, Integer> truth = new HashMap<>();
+        Random r = new Random(1);
+        final int n = 20000;
+        for (int i = 0; i < n; i++) {
+            // a few frequent words and a long tail
+            String w = r.nextInt(4) == 0 ? "hot" + r.nextInt(5)
+                    : "cold" + r.nextInt(3000);
+            h.add(w);
+            truth.merge(w, 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> e : truth.entrySet()) {
+            int c = e.getValue();
+            assertEquals(true, h.lowerBound(e.getKey()) <= c);
+            assertEquals(true, h.upperBound(e.getKey()) >= c);
+            if (c > n / k) {
+                // a heavy hitter is always in the summary
+                assertEquals(true, h.lowerBound(e.getKey()) > 0);
+            }
+        }
+        int[] seen = new int[1];
+        h.forEach((w, c) -> {
+            seen[0]++;
+            assertEquals(true, c >= truth.get(w));
+        });
+        assertEquals(k, seen[0]);
+    }
+
+    /**
+     * test that a stream is read in pieces without splitting its words.
+     *
+     * @throws IOException
+     *             never, the stream is in memory
+     */
+    @Test
+    public void testRead() throws IOException {
+        StringBuilder text = new StringBuilder();
+        final int words = 50000;
+        for (int i = 0; i < words; i++) {
+            text.append(i % 2 == 0 ? "Alpha " : "beta, ");
+        }
+        HeavyHitters h = new HeavyHitters(4, 64, 2);
+        h.read(new StringReader(text.toString()), ExpectedCounts.TOKENS);
+        assertEquals(words, h.total());
+        assertEquals(words / 2, h.lowerBound("alpha"));
+        assertEquals(words / 2, h.upperBound("beta"));
+    }
+
+    /**
+     * test that a word cut by a short read, as from a pipe, is counted once.
+     *
+     * @throws IOException
+     *             never, the stream is in memory
+     */
+    @Test
+    public void testShortReads() throws IOException {
+        Reader in = new FilterReader(
+                new StringReader("hello hello hello world\n")) {
+            @Override
+            public int read(char[] buf, int off, int len) throws IOException {
+                // at most three characters a read
+                return super.read(buf, off, Math.min(len, 3));
+            }
+        };
+        HeavyHitters h = new HeavyHitters(4, 64, 2);
+        h.read(in, ExpectedCounts.TOKENS);
+        assertEquals(4, h.total());
+        assertEquals(3, h.lowerBound("hello"));
+        assertEquals(1, h.lowerBound("world"));
+        assertEquals(0, h.upperBound("hel"));
+    }
+
+}
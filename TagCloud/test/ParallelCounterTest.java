@@ -0,0 +1,101 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author Bowei Kou
+ */
+
+public class ParallelCounterTest {
+
+    /**
+     * Pads text with short words up to position p.
+     *
+     * @param text
+     *            the text
+     * @param p
+     *            the position
+     */
+    private static void padTo(StringBuilder text, int p) {
+        while (text.length() + 2 <= p) {
+            text.append("x ");
+        }
+        while (text.length() < p) {
+            text.append(' ');
+        }
+    }
+
+    /**
+     * test words across chunk boundaries: one word spanning the first,
+     * a separator right at the second and a word longer than the search
+     * window spanning the third.
+     *
+     * @throws IOException
+     *             if the temporary file cannot be written
+     */
+    @Test
+    public void testChunkBoundaries() throws IOException {
+        final int chunk = ParallelCounter.CHUNK;
+        StringBuilder text = new StringBuilder();
+        padTo(text, chunk - 4);
+        text.append("Straddle ");
+        padTo(text, 2 * chunk);
+        text.append(" Edge, edge ");
+        StringBuilder longWord = new StringBuilder();
+        for (int i = 0; i < 70000; i++) {
+            longWord.append((char) ('a' + i % 26));
+        }
+        padTo(text, 3 * chunk - 100);
+        text.append(longWord).append("\nend");
+        Path file = Files.createTempFile("cloud", ".txt");
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+        Map<String, Integer> expected = ExpectedCounts.of(text.toString());
+        assertEquals(1, (int) expected.get("straddle"));
+        ExpectedCounts.check(expected, ParallelCounter.count(file,
+                StandardCharsets.UTF_8, ExpectedCounts.TOKENS, 3));
+        ExpectedCounts.check(expected, ParallelCounter.count(file,
+                new ByteCounter(ExpectedCounts.TOKENS,
+                        StandardCharsets.UTF_8)));
+        Files.delete(file);
+    }
+
+    /**
+     * test a small file with multi-byte characters and mixed case.
+     *
+     * @throws IOException
+     *             if the temporary file cannot be written
+     */
+    @Test
+    public void testSmall() throws IOException {
+        String text = "Caf\u00e9 cafe CAF\u00c9\r\n"
+                + "na\u00efve, Na\u00efve; apple\n";
+        Path file = Files.createTempFile("cloud", ".txt");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        WordCounts counts = ParallelCounter.count(file,
+                StandardCharsets.UTF_8, ExpectedCounts.TOKENS, 0);
+        ExpectedCounts.check(ExpectedCounts.of(text), counts);
+        assertEquals(2, counts.count("caf\u00e9"));
+        Files.delete(file);
+    }
+
+    /**
+     * test an empty file.
+     *
+     * @throws IOException
+     *             if the temporary file cannot be written
+     */
+    @Test
+    public void testEmpty() throws IOException {
+        Path file = Files.createTempFile("cloud", ".txt");
+        assertEquals(0, ParallelCounter.count(file, StandardCharsets.UTF_8,
+                ExpectedCounts.TOKENS, 2).size());
+        Files.delete(file);
+    }
+
+}
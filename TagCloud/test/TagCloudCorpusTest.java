@@ -0,0 +1,112 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * @author Bowei Kou
+ */
+
+public class TagCloudCorpusTest {
+
+    /**
+     * Writes text to a file, as UTF-8.
+     *
+     * @param file
+     *            the file
+     * @param text
+     *            the text
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the text of a file.
+     *
+     * @param file
+     *            the file
+     * @return its content, decoded as UTF-8
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes a folder and everything in it.
+     *
+     * @param dir
+     *            the folder
+     * @throws IOException
+     *             if a file cannot be deleted
+     */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) s
+                    .sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    /**
+     * test the clouds of each file and of the corpus.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testRun() throws IOException {
+        Path dir = Files.createTempDirectory("corpus");
+        write(dir.resolve("a.txt"), "apple pear apple");
+        write(dir.resolve("b.txt"), "Pear, plum.");
+        Path out = dir.resolve("out");
+        List<TagCloudCorpus.Summary> done = TagCloudCorpus.run(
+                dir.toString(), out, 10, 2, ExpectedCounts.TOKENS,
+                StandardCharsets.UTF_8);
+        assertEquals(2, done.size());
+        assertEquals(2, done.get(0).words());
+        assertEquals(null, done.get(1).error());
+        assertEquals(true, read(out.resolve("b.txt.html")).contains("plum"));
+        String all = read(out.resolve("index.html"));
+        assertEquals(true, all.contains("apple") && all.contains("plum"));
+        delete(dir);
+    }
+
+    /**
+     * test that a run into the corpus folder leaves its clouds out of the
+     * next run, and that a file named like the cloud of the corpus fails.
+     *
+     * @throws IOException
+     *             if the temporary files cannot be written
+     */
+    @Test
+    public void testOutputInCorpus() throws IOException {
+        Path dir = Files.createTempDirectory("corpus");
+        write(dir.resolve("a.txt"), "apple pear apple");
+        write(dir.resolve("index"), "kiwi");
+        TagCloudCorpus.run(dir.toString(), dir, 10, 1, ExpectedCounts.TOKENS,
+                StandardCharsets.UTF_8);
+        List<TagCloudCorpus.Summary> done = TagCloudCorpus.run(
+                dir.toString(), dir, 10, 1, ExpectedCounts.TOKENS,
+                StandardCharsets.UTF_8);
+        assertEquals(2, done.size());
+        assertEquals(null, done.get(0).error());
+        assertEquals(true, done.get(1).error() instanceof IOException);
+        assertEquals(false, Files.exists(dir.resolve("a.txt.html.html")));
+        assertEquals(false, read(dir.resolve("index.html")).contains("kiwi"));
+        delete(dir);
+    }
+
+}
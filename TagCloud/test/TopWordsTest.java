@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author Bowei Kou
+ */
+
+public class TopWordsTest {
+
+    /**
+     * Returns the words and counts of a selection, as text.
+     *
+     * @param top
+     *            the selection
+     * @return "word=count" for each word, in alphabetical order
+     */
+    private static String text(TopWords top) {
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, Integer> e : top.alphabetical()) {
+            s.append(e.getKey()).append('=').append(e.getValue()).append(' ');
+        }
+        return s.toString().trim();
+    }
+
+    /**
+     * test that the words with the highest counts are kept.
+     */
+    @Test
+    public void testTopN() {
+        TopWords top = new TopWords(3);
+        top.offer("pear", 2);
+        top.offer("apple", 9);
+        top.offer("fig", 1);
+        top.offer("kiwi", 5);
+        top.offer("plum", 7);
+        assertEquals(3, top.size());
+        assertEquals("apple=9 kiwi=5 plum=7", text(top));
+        assertEquals(9, top.max());
+        assertEquals(5, top.min());
+    }
+
+    /**
+     * test that ties go to the word first in compareTo order, whatever the
+     * order of the offers.
+     */
+    @Test
+    public void testTies() {
+        List<String> words = new ArrayList<>();
+        for (char c = 'a'; c <= 'z'; c++) {
+            words.add(String.valueOf(c));
+        }
+        for (int round = 0; round < 5; round++) {
+            Collections.shuffle(words, new java.util.Random(round));
+            TopWords top = new TopWords(4);
+            for (String w : words) {
+                top.offer(w, w.equals("q") ? 2 : 1);
+            }
+            assertEquals("a=1 b=1 c=1 q=2", text(top));
+        }
+    }
+
+    /**
+     * test the alphabetical layout, ignoring case first.
+     */
+    @Test
+    public void testAlphabetical() {
+        TopWords top = new TopWords(10);
+        top.offer("banana", 1);
+        top.offer("Apple", 1);
+        top.offer("apple", 3);
+        top.offer("Cherry", 2);
+        assertEquals("Apple=1 apple=3 banana=1 Cherry=2", text(top));
+    }
+
+    /**
+     * test a selection smaller than the vocabulary, and an empty one.
+     */
+    @Test
+    public void testSizes() {
+        TopWords top = new TopWords(5);
+        top.offer("one", 1);
+        assertEquals(1, top.size());
+        TopWords none = new TopWords(0);
+        none.offer("one", 1);
+        assertEquals(0, none.size());
+        assertEquals("", text(none));
+    }
+
+}
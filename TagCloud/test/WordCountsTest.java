@@ -0,0 +1,87 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author Bowei Kou
+ */
+
+public class WordCountsTest {
+
+    /**
+     * test adding and reading counts.
+     */
+    @Test
+    public void testAdd() {
+        WordCounts m = new WordCounts();
+        m.increment("a");
+        m.increment("b");
+        assertEquals(3, m.add("a", 2));
+        assertEquals(3, m.count("a"));
+        assertEquals(1, m.count("b"));
+        assertEquals(0, m.count("c"));
+        assertEquals(2, m.size());
+    }
+
+    /**
+     * test that the counts survive the table growing many times.
+     */
+    @Test
+    public void testGrow() {
+        WordCounts m = new WordCounts();
+        final int n = 10000;
+        for (int i = 0; i < n; i++) {
+            m.add("w" + i, i);
+        }
+        assertEquals(n, m.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, m.count("w" + i));
+        }
+        Map<String, Integer> seen = new HashMap<>();
+        m.forEach(seen::put);
+        assertEquals(n, seen.size());
+        assertEquals(42, (int) seen.get("w42"));
+    }
+
+    /**
+     * test that words given as bytes are lower-cased and share the counts
+     * of the same words given as strings.
+     */
+    @Test
+    public void testIncrementAscii() {
+        WordCounts m = new WordCounts();
+        m.increment("hello");
+        ByteBuffer b = ByteBuffer
+                .wrap("HeLLo world".getBytes(StandardCharsets.US_ASCII));
+        m.incrementAscii(b, 0, 5, "hello".hashCode());
+        m.incrementAscii(b, 6, 11, "world".hashCode());
+        m.incrementAscii(b, 6, 11, "world".hashCode());
+        assertEquals(2, m.count("hello"));
+        assertEquals(2, m.count("world"));
+        assertEquals(2, m.size());
+    }
+
+    /**
+     * test merging two tables.
+     */
+    @Test
+    public void testAddAll() {
+        WordCounts a = new WordCounts();
+        a.add("x", 2);
+        a.add("y", 1);
+        WordCounts b = new WordCounts();
+        b.add("y", 4);
+        b.add("z", 1);
+        a.addAll(b);
+        assertEquals(2, a.count("x"));
+        assertEquals(5, a.count("y"));
+        assertEquals(1, a.count("z"));
+        assertEquals(3, a.size());
+    }
+
+}